@@ -10,6 +10,7 @@ import com.jme3.math.ColorRGBA;
 import com.jme3.math.Vector3f;
 import com.jme3.renderer.RenderManager;
 import com.jme3.system.AppSettings;
+import engine.surface.SnapshotPublisher;
 import engine.util.Delay;
 import worlds.planet.TestWorld;
 import worlds.planet.geosphere.GeoCell;
@@ -23,6 +24,7 @@ public class App extends SimpleApplication {
   private static TestWorld world;
   private boolean wireframe = true;
   private final Delay delay = new Delay(500);
+  private SnapshotPublisher mantleTemperatures;
   
   public static void main(String[] args) {
     world = new TestWorld();
@@ -51,6 +53,7 @@ public class App extends SimpleApplication {
     world.getSurface().setMaterial(basicMaterial);
     world.getSurface().bindCameraForLODControl(getCamera());
     world.getSurface().bindTerrainToNode(rootNode);
+    mantleTemperatures = world.getSurface().snapshot(GeoCell.MANTLE_TEMPERATURE);
     
     DirectionalLight light = new DirectionalLight();
     light.setDirection((new Vector3f(-0.5f, -1f, -0.5f)).normalize());
@@ -75,11 +78,9 @@ public class App extends SimpleApplication {
 
   @Override
   public void simpleUpdate(float tpf) {
-    if (delay.check()) {
-      world.getSurface().updateTerrainHeight(0.01f, (cell) -> {
-         return ((GeoCell) cell).getMantleTemperature();
-      });
-      
+    if (delay.check() && mantleTemperatures.hasNewSnapshot()) {
+      world.getSurface().updateTerrainHeight(0.01f, mantleTemperatures.acquire());
+
       world.getSurface().updateVertexColors(heatMap, (heightVal) -> {
         return (int) (heightVal < -2.73f ? 0 
                    : (heightVal > heatMap.length - 1 ? heatMap.length - 1 
@@ -0,0 +1,43 @@
+package engine.surface;
+
+/**
+ * The default FieldStore, each field is a primitive float array on the heap.
+ *
+ * @author Richard DeSilvey
+ */
+public class ArrayFieldStore extends FieldStore {
+
+  private final float[][] columns;
+
+  public ArrayFieldStore(String[] names, int cellCount) {
+    super(names, cellCount);
+    columns = new float[names.length][cellCount];
+  }
+
+  @Override
+  public float get(int field, int index) {
+    return columns[field][index];
+  }
+
+  @Override
+  public void set(int field, int index, float value) {
+    columns[field][index] = value;
+  }
+
+  @Override
+  public float add(int field, int index, float amount) {
+    return columns[field][index] += amount;
+  }
+
+  /**
+   * Gets the backing array of a field. Changes made to the array are changes
+   * made to the field.
+   *
+   * @param field The id of the field
+   * @return The column of values for the field indexed by cell index.
+   */
+  public float[] getColumn(int field) {
+    return columns[field];
+  }
+
+}
@@ -0,0 +1,180 @@
+package engine.surface;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A flat, pre-sized Map of cells backed by an array and indexed by the cell
+ * index calculated by the SurfaceMap. Looking up a cell by it's primitive index
+ * doesn't box, hash or chase any node references. The Map interface is still
+ * implemented so this store can be given to <code>setMap()</code>, but the
+ * SurfaceMap will use <code>get(int)</code> and <code>put(int, C)</code>
+ * directly.
+ * <br>
+ * Each index is written to only once while the map is being built, after that
+ * the array is only read from, so no locking is needed as long as the map is
+ * built before the threads are played.
+ *
+ * @author Richard DeSilvey
+ * @param <C> The type of cell being stored
+ */
+public class CellArrayMap<C extends Cell> extends AbstractMap<Integer, C> {
+
+  private final Object[] cells;
+  private int size;
+
+  /**
+   * Creates a new array map that can hold the given number of cells.
+   *
+   * @param capacity The total number of cells, usually the width of the
+   * surface squared.
+   */
+  public CellArrayMap(int capacity) {
+    cells = new Object[capacity];
+    size = 0;
+  }
+
+  /**
+   * Gets the cell at the given index without boxing the index.
+   *
+   * @param index The index of the cell
+   * @return The cell or null if no cell has been set at this index.
+   */
+  @SuppressWarnings("unchecked")
+  public C get(int index) {
+    if (index < 0 || index >= cells.length) {
+      return null;
+    }
+    return (C) cells[index];
+  }
+
+  /**
+   * Sets the cell at the given index without boxing the index.
+   *
+   * @param index The index of the cell
+   * @param cell The cell being stored
+   * @return The previous cell at this index, null if there wasn't one.
+   */
+  @SuppressWarnings("unchecked")
+  public C put(int index, C cell) {
+    C previous = (C) cells[index];
+    cells[index] = cell;
+    if (previous == null && cell != null) {
+      size++;
+    } else if (previous != null && cell == null) {
+      size--;
+    }
+    return previous;
+  }
+
+  /**
+   * The number of cells this map can hold.
+   *
+   * @return The length of the backing array.
+   */
+  public int capacity() {
+    return cells.length;
+  }
+
+  @Override
+  public C get(Object key) {
+    return (key instanceof Integer) ? get(((Integer) key).intValue()) : null;
+  }
+
+  @Override
+  public C put(Integer key, C value) {
+    return put(key.intValue(), value);
+  }
+
+  @Override
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  @Override
+  public C remove(Object key) {
+    if (key instanceof Integer) {
+      int index = (Integer) key;
+      if (index >= 0 && index < cells.length) {
+        return put(index, null);
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < cells.length; i++) {
+      cells[i] = null;
+    }
+    size = 0;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public Set<Entry<Integer, C>> entrySet() {
+    return new AbstractSet<Entry<Integer, C>>() {
+      @Override
+      public Iterator<Entry<Integer, C>> iterator() {
+        return new CellIterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
+  }
+
+  /**
+   * Iterates over the set cells in index order skipping empty indexes.
+   */
+  private class CellIterator implements Iterator<Entry<Integer, C>> {
+
+    private int next, last;
+
+    public CellIterator() {
+      last = -1;
+      next = seek(0);
+    }
+
+    private int seek(int from) {
+      while (from < cells.length && cells[from] == null) {
+        from++;
+      }
+      return from;
+    }
+
+    @Override
+    public boolean hasNext() {
+      return next < cells.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Entry<Integer, C> next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      last = next;
+      next = seek(next + 1);
+      return new SimpleImmutableEntry<>(last, (C) cells[last]);
+    }
+
+    @Override
+    public void remove() {
+      if (last < 0) {
+        throw new IllegalStateException();
+      }
+      put(last, null);
+      last = -1;
+    }
+  }
+}
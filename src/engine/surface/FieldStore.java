@@ -0,0 +1,100 @@
+package engine.surface;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A FieldStore holds the scalar state of every cell on a SurfaceMap as named
+ * columns of floats. Each column (field) is indexed by the cell index, the
+ * same index that the SurfaceMap calculates with <code>calcIndex()</code>.
+ * Keeping per-cell scalars in columns lets sweeps over the surface stream
+ * contiguous memory instead of visiting millions of separate objects.
+ * <br>
+ * Fields are referenced by their id, which is the position of the field's
+ * name in the array of names given when the store was created.
+ *
+ * @author Richard DeSilvey
+ */
+public abstract class FieldStore {
+
+  private final List<String> names;
+  private final int cellCount;
+
+  /**
+   * Creates a new store with a column for each name given.
+   *
+   * @param names The names of each field, the id of a field is it's position
+   * in this array.
+   * @param cellCount The number of cells each column holds.
+   */
+  public FieldStore(String[] names, int cellCount) {
+    if (cellCount < 0) {
+      throw new IllegalArgumentException("Can't have a negative cell count");
+    }
+    this.names = Collections.unmodifiableList(Arrays.asList(names.clone()));
+    this.cellCount = cellCount;
+  }
+
+  public final int getFieldCount() {
+    return names.size();
+  }
+
+  public final int getCellCount() {
+    return cellCount;
+  }
+
+  public final String getFieldName(int field) {
+    return names.get(field);
+  }
+
+  /**
+   * Looks up the id of a field by it's name.
+   *
+   * @param name The name of the field
+   * @return The id of the field
+   * @throws IllegalArgumentException if the field doesn't exist.
+   */
+  public final int getFieldId(String name) {
+    int field = names.indexOf(name);
+    if (field < 0) {
+      throw new IllegalArgumentException("The field " + name + " doesn't exist");
+    }
+    return field;
+  }
+
+  /**
+   * Gets the value of a field for the cell at the given index.
+   *
+   * @param field The id of the field
+   * @param index The index of the cell
+   * @return The value of the field
+   */
+  public abstract float get(int field, int index);
+
+  /**
+   * Sets the value of a field for the cell at the given index.
+   *
+   * @param field The id of the field
+   * @param index The index of the cell
+   * @param value The new value
+   */
+  public abstract void set(int field, int index, float value);
+
+  /**
+   * Adds the amount to the value of a field for the cell at the given index.
+   * This is not atomic, the cell should only be changed by the thread that
+   * owns it.
+   *
+   * @param field The id of the field
+   * @param index The index of the cell
+   * @param amount The amount being added
+   * @return The new value of the field
+   */
+  public float add(int field, int index, float amount) {
+    float value = get(field, index) + amount;
+    set(field, index, value);
+    return value;
+  }
+
+}
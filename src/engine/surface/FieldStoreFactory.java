@@ -0,0 +1,21 @@
+package engine.surface;
+
+/**
+ * A FieldStoreFactory creates the FieldStore backend for a surface. This allows
+ * a surface to choose where the per-cell scalar state is kept, e.g. on the
+ * heap with an ArrayFieldStore or outside of the heap with a
+ * MappedFieldStore.
+ *
+ * @author Richard DeSilvey
+ */
+public interface FieldStoreFactory {
+
+  /**
+   * Creates a new store with a field for each name given.
+   *
+   * @param names The names of each field
+   * @param cellCount The number of cells each field holds
+   * @return A new instance of a FieldStore.
+   */
+  FieldStore buildStore(String[] names, int cellCount);
+}
@@ -0,0 +1,284 @@
+package engine.surface;
+
+import engine.util.concurrent.MThread;
+import engine.util.task.Boundaries;
+import engine.util.task.Task;
+import engine.util.task.TaskAdapter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A copy of a single FieldStore field split into regions, one for each
+ * MThread. Each region holds the cells of the thread's Boundaries plus a halo
+ * of cells around them, so a stencil task can read it's neighbors from
+ * memory private to the thread instead of reaching across region borders
+ * into the shared store. Each thread copies it's cells from the store into
+ * it's region after it's tasks finish and the halos are filled from the
+ * neighboring regions when all threads meet at the frame barrier. The halos
+ * wrap around the edges of the surface.
+ *
+ * @author Richard DeSilvey
+ */
+public class HaloField {
+
+  private final SurfaceMap<?> surface;
+  private final int field, haloWidth;
+  private final List<Region> regions;
+  private final List<MThread> threads;
+  private final Map<MThread, Region> threadRegions;
+  private FieldStore store;
+
+  /**
+   * Creates a new halo field with a region for each thread. The regions are
+   * empty until <code>fill()</code> is called.
+   *
+   * @param surface The surface owning the FieldStore
+   * @param field The id of the field
+   * @param haloWidth The number of cells around each region to copy from the
+   * neighboring regions
+   * @param threads The threads working on the surface
+   */
+  public HaloField(SurfaceMap<?> surface, int field, int haloWidth, List<MThread> threads) {
+    if (haloWidth < 0) {
+      throw new IllegalArgumentException("The halo width can't be negative");
+    }
+    this.surface = surface;
+    this.field = field;
+    this.haloWidth = haloWidth;
+    this.threads = threads;
+    regions = new ArrayList<>();
+    threadRegions = new HashMap<>();
+    buildRegions();
+  }
+
+  private void buildRegions() {
+    regions.clear();
+    threadRegions.clear();
+    threads.forEach(thread -> {
+      Region region = new Region(thread.getManager().getBounds());
+      regions.add(region);
+      threadRegions.put(thread, region);
+    });
+  }
+
+  /**
+   * Rebuilds each region to match the current bounds of it's thread and fills
+   * them again. This needs to be called after the bounds of the threads
+   * change, while the threads aren't running a frame.
+   */
+  public void resize() {
+    buildRegions();
+    fill();
+  }
+
+  public int getField() {
+    return field;
+  }
+
+  public int getHaloWidth() {
+    return haloWidth;
+  }
+
+  /**
+   * Gets the region belonging to the given thread.
+   *
+   * @param thread The thread working on the region
+   * @return The region or null if the thread isn't part of this field
+   */
+  public Region getRegion(MThread thread) {
+    return threadRegions.get(thread);
+  }
+
+  /**
+   * Copies every region from the store and fills the halos. This needs to be
+   * called when the store is created or rebuilt, while the threads aren't
+   * running.
+   */
+  public void fill() {
+    store = surface.getFieldStore();
+    regions.forEach(Region::captureAll);
+    exchange();
+  }
+
+  /**
+   * Fills the halo of each region with the cells of the neighboring regions.
+   * This should only be called while no thread is reading the regions, i.e.
+   * at the frame barrier.
+   */
+  public void exchange() {
+    regions.forEach(Region::fillHalo);
+  }
+
+  /**
+   * Creates a task that copies each cell of the thread's region from the
+   * store.
+   *
+   * @param thread The thread the task is for
+   * @return A new capture task
+   */
+  public Task captureTask(MThread thread) {
+    return new TaskAdapter() {
+      private Region region = getRegion(thread);
+
+      {
+        reads(field);
+        fusable = true;
+      }
+
+      @Override
+      public void before() {
+        // The regions are rebuilt when the threads are rebalanced
+        region = getRegion(thread);
+      }
+
+      @Override
+      public void perform(int x, int y) {
+        region.capture(x, y);
+      }
+
+      @Override
+      public void after() {
+      }
+    };
+  }
+
+  private Region findRegion(int x, int y, Region last) {
+    if (last != null && last.owns(x, y)) {
+      return last;
+    }
+    for (Region region : regions) {
+      if (region.owns(x, y)) {
+        return region;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * The cells of one thread's Boundaries and the halo around them.
+   */
+  public class Region {
+
+    private final int lowerX, lowerY, upperX, upperY, stride;
+    private final float[] values;
+
+    private Region(Boundaries bounds) {
+      lowerX = bounds.getLowerXBound();
+      lowerY = bounds.getLowerYBound();
+      upperX = bounds.getUpperXBound();
+      upperY = bounds.getUpperYBound();
+      stride = Math.max(upperX - lowerX, 0) + (haloWidth * 2);
+      int rows = Math.max(upperY - lowerY, 0) + (haloWidth * 2);
+      values = new float[stride * rows];
+    }
+
+    /**
+     * Gets the value of a cell inside of this region or it's halo. The
+     * coordinates are not wrapped, e.g. the cell left of x = 0 is x = -1.
+     *
+     * @param x The x coordinate of the cell
+     * @param y The y coordinate of the cell
+     * @return The value of the cell at the end of the previous frame
+     */
+    public float get(int x, int y) {
+      return values[localIndex(x, y)];
+    }
+
+    /**
+     * The index into the array of this region for the cell at (x, y).
+     *
+     * @param x The x coordinate, not wrapped
+     * @param y The y coordinate, not wrapped
+     * @return The local index
+     */
+    public int localIndex(int x, int y) {
+      return ((y - lowerY + haloWidth) * stride) + (x - lowerX + haloWidth);
+    }
+
+    /**
+     * Gets the value at a local index.
+     *
+     * @param localIndex The index into the array of this region
+     * @return The value at the local index
+     */
+    public float get(int localIndex) {
+      return values[localIndex];
+    }
+
+    /**
+     * Calculates the offset of the local index for each of the given
+     * directions. Since the halo surrounds the region, a neighbor of any
+     * cell in the region is it's local index plus the offset, no wrapping or
+     * bounds checks needed as long as the directions reach no further than
+     * the halo.
+     *
+     * @param dirX The x component of each direction
+     * @param dirY The y component of each direction
+     * @return The offsets to add to a local index for each direction
+     */
+    public int[] neighborOffsets(int[] dirX, int[] dirY) {
+      int[] offsets = new int[dirX.length];
+      for (int d = 0; d < offsets.length; d++) {
+        offsets[d] = (dirY[d] * stride) + dirX[d];
+      }
+      return offsets;
+    }
+
+    /**
+     * The number of values in each row of this region including the halo.
+     *
+     * @return The row stride
+     */
+    public int getStride() {
+      return stride;
+    }
+
+    /**
+     * The values of this region and it's halo in row-major order.
+     *
+     * @return The values of this region
+     */
+    public float[] getValues() {
+      return values;
+    }
+
+    private boolean owns(int x, int y) {
+      return x >= lowerX && x < upperX && y >= lowerY && y < upperY;
+    }
+
+    private void capture(int x, int y) {
+      values[localIndex(x, y)] = store.get(field, surface.calcIndex(x, y));
+    }
+
+    private void captureAll() {
+      for (int y = lowerY; y < upperY; y++) {
+        for (int x = lowerX; x < upperX; x++) {
+          capture(x, y);
+        }
+      }
+    }
+
+    private void fillHalo() {
+      int width = surface.getTerrainSize();
+      Region source = null;
+      for (int y = lowerY - haloWidth; y < upperY + haloWidth; y++) {
+        int wrappedY = Math.floorMod(y, width);
+        for (int x = lowerX - haloWidth; x < upperX + haloWidth; x++) {
+          if (owns(x, y)) {
+            x = upperX - 1;
+            continue;
+          }
+          int wrappedX = Math.floorMod(x, width);
+          source = findRegion(wrappedX, wrappedY, source);
+          float value = (source == null)
+                  ? store.get(field, surface.calcIndex(wrappedX, wrappedY))
+                  : source.get(wrappedX, wrappedY);
+          values[localIndex(x, y)] = value;
+        }
+      }
+    }
+  }
+
+}
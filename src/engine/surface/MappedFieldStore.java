@@ -0,0 +1,184 @@
+package engine.surface;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * A FieldStore that keeps each field outside of the heap. Fields are either
+ * direct buffers or files mapped into memory, one file per field. Large
+ * surfaces can keep their per-cell scalars here so the heap doesn't grow with
+ * the size of the surface and the garbage collector never has to scan them.
+ * Direct buffers still count against -XX:MaxDirectMemorySize, which defaults
+ * to the maximum heap size, so a store of direct buffers larger than -Xmx
+ * needs that limit raised. Mapped files aren't limited by it.
+ * <br>
+ * Closing the store frees the buffers right away instead of waiting for the
+ * garbage collector, the field files are kept so they can be mapped again.
+ * Deleting the store closes it and removes the files. The store shouldn't be
+ * closed until nothing, such as the threads of a surface, is using it.
+ *
+ * @author Richard DeSilvey
+ */
+public class MappedFieldStore extends FieldStore implements Closeable {
+
+  private static final int FLOAT_BYTES = 4;
+
+  private final ByteBuffer[] buffers;
+  private final FloatBuffer[] columns;
+  private final File[] files;
+
+  /**
+   * Creates a new store where each field is a direct buffer allocated outside
+   * of the heap.
+   *
+   * @param names The names of each field
+   * @param cellCount The number of cells each field holds
+   */
+  public MappedFieldStore(String[] names, int cellCount) {
+    super(names, cellCount);
+    int size = (int) columnBytes(cellCount);
+    buffers = new ByteBuffer[names.length];
+    columns = new FloatBuffer[names.length];
+    files = null;
+    for (int field = 0; field < names.length; field++) {
+      buffers[field] = ByteBuffer.allocateDirect(size).order(ByteOrder.nativeOrder());
+      columns[field] = buffers[field].asFloatBuffer();
+    }
+  }
+
+  /**
+   * Creates a new store where each field is mapped to a file in the given
+   * directory. Existing files are resized and their contents are reused. The
+   * files are kept when the store is closed and removed by delete().
+   *
+   * @param names The names of each field
+   * @param cellCount The number of cells each field holds
+   * @param directory The directory the field files are kept in
+   */
+  public MappedFieldStore(String[] names, int cellCount, File directory) {
+    super(names, cellCount);
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IllegalArgumentException("Can't create the directory " + directory);
+    }
+    long size = columnBytes(cellCount);
+    buffers = new ByteBuffer[names.length];
+    columns = new FloatBuffer[names.length];
+    files = new File[names.length];
+    for (int field = 0; field < names.length; field++) {
+      files[field] = new File(directory, fileName(names[field]));
+      buffers[field] = mapField(files[field], size);
+      columns[field] = buffers[field].asFloatBuffer();
+    }
+  }
+
+  /**
+   * The number of bytes a column of the given number of cells takes. A
+   * buffer can't hold more than Integer.MAX_VALUE bytes.
+   */
+  private static long columnBytes(int cellCount) {
+    long size = (long) cellCount * FLOAT_BYTES;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("A field of " + cellCount
+              + " cells is too large for a single buffer");
+    }
+    return size;
+  }
+
+  private static String fileName(String fieldName) {
+    return fieldName.replaceAll("[^A-Za-z0-9]", "_") + ".field";
+  }
+
+  private static ByteBuffer mapField(File file, long size) {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            FileChannel channel = raf.getChannel()) {
+      // The mapping stays valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_WRITE, 0, size)
+              .order(ByteOrder.nativeOrder());
+    } catch (IOException e) {
+      throw new UncheckedIOException("Couldn't map the field file " + file, e);
+    }
+  }
+
+  @Override
+  public float get(int field, int index) {
+    return columns[field].get(index);
+  }
+
+  @Override
+  public void set(int field, int index, float value) {
+    columns[field].put(index, value);
+  }
+
+  /**
+   * Frees each buffer. Field files are written back and kept. The store can't
+   * be used after it's closed.
+   */
+  @Override
+  public synchronized void close() {
+    for (int field = 0; field < buffers.length; field++) {
+      if (buffers[field] == null) {
+        continue;
+      }
+      columns[field] = null;
+      release(buffers[field]);
+      buffers[field] = null;
+    }
+  }
+
+  /**
+   * Closes the store and deletes it's field files. Any other store mapped to
+   * the same directory loses it's files as well, so only delete the store
+   * once the fields are no longer needed.
+   *
+   * @throws IOException If a field file couldn't be deleted
+   */
+  public synchronized void delete() throws IOException {
+    close();
+    if (files == null) {
+      return;
+    }
+    for (File file : files) {
+      if (file.exists() && !file.delete()) {
+        throw new IOException("Couldn't delete the field file " + file);
+      }
+    }
+  }
+
+  /**
+   * Frees the memory of a direct or mapped buffer. Java 9 and later free it
+   * through Unsafe.invokeCleaner, Java 8 through the buffer's cleaner. If
+   * neither is reachable the memory is freed when the buffer is collected.
+   */
+  private static void release(ByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+      return;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Not Java 9 or later
+    }
+    try {
+      Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+      cleanerMethod.setAccessible(true);
+      Object cleaner = cleanerMethod.invoke(buffer);
+      if (cleaner != null) {
+        cleaner.getClass().getMethod("clean").invoke(cleaner);
+      }
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Left to the garbage collector
+    }
+  }
+
+}
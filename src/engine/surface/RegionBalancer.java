@@ -0,0 +1,70 @@
+package engine.surface;
+
+/**
+ * Moves the borders between the columns or rows of a grid of regions so each
+ * one takes about the same amount of time to update. The time measured for a
+ * region is assumed to be spread evenly over it's cells, the new borders
+ * divide the total time evenly between the regions. Borders only move part
+ * of the way each time, and never more than MAX_STEP cells, so a single slow
+ * frame doesn't throw the grid off and few cells change owners at once.
+ *
+ * @author Richard DeSilvey
+ */
+public final class RegionBalancer {
+
+  /**
+   * The fraction of the distance to the balanced position a border moves
+   * each time.
+   */
+  public static final float DAMPING = 0.5f;
+
+  /**
+   * The most cells a border moves each time. The cells a border moves across
+   * get a new owner while every thread waits at the gate, this keeps that
+   * work small on large surfaces.
+   */
+  public static final int MAX_STEP = 8;
+
+  private RegionBalancer() {
+  }
+
+  /**
+   * Calculates new borders for a row or column of regions.
+   *
+   * @param bounds The current borders, region i covers [bounds[i],
+   * bounds[i + 1]). The first and last border never move.
+   * @param costs The time measured for each region
+   * @return The new borders, each region keeps at least one cell
+   */
+  public static int[] balance(int[] bounds, long[] costs) {
+    int parts = costs.length;
+    int[] balanced = bounds.clone();
+    long total = 0;
+    for (long cost : costs) {
+      total += Math.max(cost, 0);
+    }
+    if (total == 0 || parts < 2) {
+      return balanced;
+    }
+    int length = bounds[parts];
+    int part = 0;
+    double before = 0;
+    for (int border = 1; border < parts; border++) {
+      double target = (double) total * border / parts;
+      while (part < parts - 1 && before + Math.max(costs[part], 0) < target) {
+        before += Math.max(costs[part], 0);
+        part++;
+      }
+      double cost = Math.max(costs[part], 0);
+      double fraction = cost == 0 ? 0 : (target - before) / cost;
+      double position = bounds[part] + fraction * (bounds[part + 1] - bounds[part]);
+      long step = Math.round((position - bounds[border]) * DAMPING);
+      int moved = bounds[border] + (int) Math.max(-MAX_STEP, Math.min(MAX_STEP, step));
+      int lowest = balanced[border - 1] + 1;
+      int highest = length - (parts - border);
+      balanced[border] = Math.max(lowest, Math.min(highest, moved));
+    }
+    return balanced;
+  }
+
+}
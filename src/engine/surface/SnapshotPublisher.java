@@ -0,0 +1,161 @@
+package engine.surface;
+
+import engine.util.task.Task;
+import engine.util.task.TaskAdapter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes copies of a single FieldStore field for a reader outside of the
+ * simulation, such as the render thread. The copies are triple-buffered: the
+ * threads copy their cells into the back buffer at the end of each frame,
+ * the back buffer is published at the frame barrier and the reader takes the
+ * latest published copy whenever it wants. Neither side ever waits on the
+ * other and the reader never sees a copy that is only partly written.
+ * <br>
+ * The values of a snapshot are in row-major order, the value of the cell at
+ * (x, y) is at <code>y * width + x</code> no matter how the surface lays out
+ * it's cells.
+ *
+ * @author Richard DeSilvey
+ */
+public class SnapshotPublisher {
+
+  /**
+   * Set in the state when the middle buffer holds a copy the reader hasn't
+   * taken yet. The lower bits are the index of the middle buffer.
+   */
+  private static final int FRESH = 4, INDEX_MASK = 3;
+
+  private final SurfaceMap<?> surface;
+  private final int field, width;
+  private final float[][] buffers;
+  private final long[] frames;
+  private final AtomicInteger state;
+  private FieldStore store;
+  private int back, front;
+  private long frame;
+
+  /**
+   * Creates a new publisher for a field of the surface's FieldStore. Nothing
+   * is published until <code>fill()</code> is called.
+   *
+   * @param surface The surface owning the FieldStore
+   * @param field The id of the field
+   */
+  public SnapshotPublisher(SurfaceMap<?> surface, int field) {
+    this.surface = surface;
+    this.field = field;
+    width = surface.getTerrainSize();
+    buffers = new float[3][width * width];
+    frames = new long[3];
+    back = 0;
+    state = new AtomicInteger(1);
+    front = 2;
+  }
+
+  public int getField() {
+    return field;
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * Copies the whole field into the back buffer and publishes it. This needs
+   * to be called when the store is created or rebuilt, while the threads
+   * aren't running.
+   */
+  public void fill() {
+    store = surface.getFieldStore();
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        capture(x, y);
+      }
+    }
+    publish();
+  }
+
+  /**
+   * Copies the current value of a cell from the store into the back buffer.
+   *
+   * @param x The x coordinate of the cell
+   * @param y The y coordinate of the cell
+   */
+  public void capture(int x, int y) {
+    buffers[back][(y * width) + x] = store.get(field, surface.calcIndex(x, y));
+  }
+
+  /**
+   * Makes the back buffer the newest snapshot. This should only be called
+   * while no thread is writing the back buffer, i.e. at the frame barrier.
+   */
+  public void publish() {
+    frames[back] = frame++;
+    back = state.getAndSet(back | FRESH) & INDEX_MASK;
+  }
+
+  /**
+   * Checks if a snapshot was published since the reader last took one.
+   *
+   * @return True if <code>acquire()</code> would return a newer snapshot
+   */
+  public boolean hasNewSnapshot() {
+    return (state.get() & FRESH) != 0;
+  }
+
+  /**
+   * Takes the newest published snapshot. The array belongs to the reader
+   * until the next call to this method, only a single thread should read
+   * the snapshots.
+   *
+   * @return The values of the field, the same array as the last call if
+   * nothing new was published
+   */
+  public float[] acquire() {
+    if (hasNewSnapshot()) {
+      front = state.getAndSet(front) & INDEX_MASK;
+    }
+    return buffers[front];
+  }
+
+  /**
+   * The frame the last acquired snapshot was published on, counted from the
+   * first call to <code>fill()</code>.
+   *
+   * @return The frame of the snapshot returned by the last
+   * <code>acquire()</code>
+   */
+  public long acquiredFrame() {
+    return frames[front];
+  }
+
+  /**
+   * Creates a task that copies each cell of a thread's region into the back
+   * buffer.
+   *
+   * @return A new capture task
+   */
+  public Task captureTask() {
+    return new TaskAdapter() {
+      {
+        reads(field);
+        fusable = true;
+      }
+
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+        capture(x, y);
+      }
+
+      @Override
+      public void after() {
+      }
+    };
+  }
+
+}
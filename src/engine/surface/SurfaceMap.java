@@ -9,21 +9,36 @@ import com.jme3.terrain.geomipmap.TerrainPatch;
 import com.jme3.terrain.geomipmap.TerrainQuad;
 import com.jme3.terrain.geomipmap.lodcalc.DistanceLodCalculator;
 import engine.util.concurrent.MThread;
+import engine.util.concurrent.TaskRunner;
+import engine.util.concurrent.ThreadMode;
+import engine.util.concurrent.TileScheduler;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.CyclicBarrier;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 import engine.util.Vec2;
 import engine.util.task.Boundaries;
 import engine.util.task.Task;
 import engine.util.task.TaskAdapter;
 import engine.util.task.TaskFactory;
+import engine.util.task.Traversal;
 import worlds.planet.Util;
 
 /**
@@ -56,12 +71,47 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
    */
   public static final int[] HDIR_Y_INDEX = {-1, 0, 1, 0};
 
+  /*
+    Wrapped neighbor coordinates, [direction][coordinate]
+  */
+  private final int[][] neighborX, neighborY, adjacentX, adjacentY;
+
   public int displaySetting;
 
   /**
    * The map containing the references to each data point on the surface.
    */
   protected Map<Integer, C> map;
+  /**
+   * If the map is a CellArrayMap this references the same map so lookups can
+   * skip boxing the index, null otherwise.
+   */
+  private CellArrayMap<C> arrayMap;
+  /**
+   * The columns of per-cell scalar state, indexed the same way as the map.
+   */
+  private FieldStore fieldStore;
+  /**
+   * Fields split into regions with halos, exchanged at the waiting gate.
+   */
+  private final List<HaloField> haloFields;
+  /**
+   * Fields copied for readers outside of the simulation, published at the
+   * waiting gate.
+   */
+  private final List<SnapshotPublisher> publishers;
+
+  /*
+    Tiled layout, a tile size of zero is a row-major layout
+  */
+  private int tileSize, tileShift, tileMask, tilesPerRow;
+
+  /*
+    Map construction
+  */
+  private static final ThreadLocal<Random> buildRandom = new ThreadLocal<>();
+  private boolean parallelBuild;
+  private long seed;
   private final List<Integer[]> renderData;
   
   /*
@@ -71,6 +121,29 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
   private int prevSubThreadAvg;
   private ExecutorService threadPool;
   private CyclicBarrier waitingGate;
+  /**
+   * Runs the threads as tiles on a fork join pool, null if each thread runs
+   * on it's own.
+   */
+  private TileScheduler scheduler;
+  private ThreadMode threadMode;
+  /**
+   * The borders between the columns and rows of the thread grid.
+   */
+  private int[] xBounds, yBounds;
+  private int rebalanceInterval, framesSinceRebalance;
+  /**
+   * The frames left to run before the threads halt at the gate, negative
+   * while the threads run freely. Counted at the waiting gate so every thread
+   * stops after the same frame.
+   */
+  private final AtomicInteger frameBudget;
+  private volatile CountDownLatch stepDone;
+  /**
+   * Set when the last frame was committed as the threads were halted, so it
+   * isn't committed again when they carry on. Only touched at the gate.
+   */
+  private boolean committed;
   private final MThread hotSpotThread;
   
   private TerrainLodControl control;
@@ -87,9 +160,35 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
     super("surface", 65, totalSize, null);
     threadReferences = new ArrayList<>();
     renderData = new ArrayList<>();
+    haloFields = new CopyOnWriteArrayList<>();
+    publishers = new CopyOnWriteArrayList<>();
+    frameBudget = new AtomicInteger(-1);
     prevSubThreadAvg = 0;
     displaySetting = 0;
+    parallelBuild = false;
+    threadMode = ThreadMode.PLATFORM;
+    seed = new Random().nextLong();
     hotSpotThread = new MThread(1, new Boundaries(0, totalSize - 1));
+    int width = getTerrainSize();
+    neighborX = wrapTable(DIR_X_INDEX, width);
+    neighborY = wrapTable(DIR_Y_INDEX, width);
+    adjacentX = wrapTable(HDIR_X_INDEX, width);
+    adjacentY = wrapTable(HDIR_Y_INDEX, width);
+  }
+
+  /**
+   * Builds a table of the wrapped coordinate in each direction for every
+   * coordinate along one axis. The table grows with the width of the surface
+   * instead of the number of cells.
+   */
+  private static int[][] wrapTable(int[] directions, int width) {
+    int[][] table = new int[directions.length][width];
+    for (int d = 0; d < directions.length; d++) {
+      for (int c = 0; c < width; c++) {
+        table[d][c] = Util.checkBounds(c + directions[d], width);
+      }
+    }
+    return table;
   }
   
   public void bindCameraForLODControl(Camera camera) {
@@ -121,6 +220,26 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
     setHeight(locs, heights);
   }
   
+  /**
+   * Update the terrain's height from a snapshot of a field.
+   *
+   * @param scale Scale the height with this value
+   * @param values The value of each cell in row-major order
+   * @see SnapshotPublisher
+   */
+  public void updateTerrainHeight(float scale, float[] values) {
+    int width = getTerrainSize();
+    List<Vector2f> locs = new ArrayList<>(values.length);
+    List<Float> heights = new ArrayList<>(values.length);
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        locs.add(Util.scalePositionForTerrain(x, y, width));
+        heights.add(values[(y * width) + x] * scale);
+      }
+    }
+    setHeight(locs, heights);
+  }
+
   public void updateVertexColors(float colorMap[][], MapBounds bounds) {
     List<TerrainPatch> patches = new ArrayList<>();
     getAllTerrainPatches(patches);
@@ -159,8 +278,283 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
     setMap(defaultMap);
   }
 
+  /**
+   * Using a CellArrayMap as the Map data structure. The array is sized to hold
+   * every cell on the surface and cells are looked up directly by their index.
+   * The map can be shared between threads since each index is only written to
+   * while the map is being built.
+   */
+  protected void setupArrayMap() {
+    setMap(new CellArrayMap<>(getIndexCapacity()));
+  }
+
+  /**
+   * Sets up a FieldStore on the heap with a column for each given field name.
+   * Each column is sized to hold a value for every cell on the surface.
+   *
+   * @param fieldNames The names of each field, the id of a field is it's
+   * position in this array.
+   */
+  protected void setupFieldStore(String... fieldNames) {
+    setupFieldStore(ArrayFieldStore::new, fieldNames);
+  }
+
+  /**
+   * Sets up a FieldStore built by the given factory with a column for each
+   * given field name. Each column is sized to hold a value for every cell on
+   * the surface.
+   *
+   * @param factory The factory that creates the store's backend
+   * @param fieldNames The names of each field, the id of a field is it's
+   * position in this array.
+   */
+  protected void setupFieldStore(FieldStoreFactory factory, String... fieldNames) {
+    setFieldStore(factory.buildStore(fieldNames, getIndexCapacity()));
+  }
+
+  public void setFieldStore(FieldStore fieldStore) {
+    this.fieldStore = fieldStore;
+  }
+
+  /**
+   * The columns of per-cell scalar state for this surface, null if one
+   * was never setup.
+   *
+   * @return The FieldStore for this surface.
+   */
+  public FieldStore getFieldStore() {
+    return fieldStore;
+  }
+
+  /**
+   * Splits a field of the FieldStore into a region for each thread with a halo
+   * of the given width around it. Each thread copies it's cells into it's
+   * region after it's tasks finish and the halos are exchanged when all the
+   * threads meet at the waiting gate. This needs to be called after the
+   * threads and FieldStore are setup.
+   *
+   * @param field The id of the field
+   * @param haloWidth The width of the halo around each region
+   * @return The field that tasks read the previous frame's values from
+   */
+  public HaloField haloField(int field, int haloWidth) {
+    HaloField halo = new HaloField(this, field, haloWidth, threadReferences);
+    halo.fill();
+    haloFields.add(halo);
+    threadReferences.forEach(thread -> {
+      thread.addSyncTask(halo.captureTask(thread));
+    });
+    return halo;
+  }
+
+  /**
+   * Publishes a copy of a field of the FieldStore at the end of every frame
+   * for a reader outside of the simulation, such as the render thread. The
+   * reader never waits on the threads and never sees a copy that is only
+   * partly written. This needs to be called after the threads and FieldStore
+   * are setup.
+   *
+   * @param field The id of the field
+   * @return The publisher to take the snapshots from
+   */
+  public SnapshotPublisher snapshot(int field) {
+    SnapshotPublisher publisher = new SnapshotPublisher(this, field);
+    publisher.fill();
+    publishers.add(publisher);
+    threadReferences.forEach(thread -> {
+      thread.addSyncTask(publisher.captureTask());
+    });
+    return publisher;
+  }
+
+  /**
+   * Runs once all the threads meet at the waiting gate, before any of them
+   * start the next frame.
+   */
+  private void frameBarrier() {
+    int framesLeft = frameBudget.get();
+    if (framesLeft == 0) {
+      // The last frame is committed so it can be read once step() returns
+      commitFrame();
+      committed = true;
+      frameBudget.compareAndSet(0, -1);
+      CountDownLatch done = stepDone;
+      frameRunners().forEach(runner -> runner.halt(done));
+      return;
+    }
+    if (scheduler == null && rebalanceInterval > 0
+            && ++framesSinceRebalance >= rebalanceInterval) {
+      framesSinceRebalance = 0;
+      rebalance();
+    }
+    if (committed) {
+      // No frame ran since the threads were halted
+      committed = false;
+    } else {
+      commitFrame();
+    }
+    onFrame();
+    if (framesLeft > 0) {
+      frameBudget.compareAndSet(framesLeft, framesLeft - 1);
+    }
+  }
+
+  /**
+   * The runners that run the frames of the surface, the scheduler when the
+   * surface is tiled otherwise each thread.
+   */
+  private List<? extends TaskRunner> frameRunners() {
+    return (scheduler != null) ? Collections.singletonList(scheduler) : threadReferences;
+  }
+
+  /**
+   * Called once for each frame of the surface, after the threads finish the
+   * previous frame and before any of them start the next one. Nothing else
+   * is touching the surface while this runs. By default this does nothing.
+   */
+  protected void onFrame() {
+  }
+
+  /**
+   * Exchanges the halos and publishes the snapshots of the frame the threads
+   * just finished.
+   */
+  private void commitFrame() {
+    haloFields.forEach(HaloField::exchange);
+    publishers.forEach(SnapshotPublisher::publish);
+  }
+
+  /**
+   * Moves the borders of the thread regions every given number of frames so
+   * the threads spend about the same time on their tasks. Regions that took
+   * longer shrink and regions that finished early grow. Since the threads
+   * form a grid the columns are balanced on the total time of each column and
+   * the rows on the total time of each row. This has no effect on tiled
+   * threads, the fork join pool already balances them by stealing work.
+   *
+   * @param frames The number of frames between each rebalance, zero turns
+   * rebalancing off
+   */
+  public void setRebalanceInterval(int frames) {
+    if (frames < 0) {
+      throw new IllegalArgumentException("The interval can't be negative");
+    }
+    rebalanceInterval = frames;
+    framesSinceRebalance = 0;
+  }
+
+  public int getRebalanceInterval() {
+    return rebalanceInterval;
+  }
+
+  /**
+   * Balances the thread regions on the time each thread spent on it's last
+   * frame. This needs to be called while no thread is running a frame, i.e.
+   * at the waiting gate.
+   */
+  public void rebalance() {
+    if (xBounds == null || scheduler != null) {
+      return;
+    }
+    int columns = xBounds.length - 1, rows = yBounds.length - 1;
+    long[] columnCosts = new long[columns];
+    long[] rowCosts = new long[rows];
+    for (int i = 0; i < threadReferences.size(); i++) {
+      long work = threadReferences.get(i).workNanos();
+      columnCosts[i % columns] += work;
+      rowCosts[i / columns] += work;
+    }
+    int[] newXBounds = RegionBalancer.balance(xBounds, columnCosts);
+    int[] newYBounds = RegionBalancer.balance(yBounds, rowCosts);
+    if (Arrays.equals(newXBounds, xBounds) && Arrays.equals(newYBounds, yBounds)) {
+      return;
+    }
+    int[] oldXBounds = xBounds, oldYBounds = yBounds;
+    xBounds = newXBounds;
+    yBounds = newYBounds;
+    // Posted changes are indexed by the old bounds
+    threadReferences.forEach(thread -> thread.getDeltaBuffer().drain());
+    for (int i = 0; i < threadReferences.size(); i++) {
+      MThread thread = threadReferences.get(i);
+      int x = i % columns, y = i / columns;
+      thread.getManager().getBounds().set(xBounds[x], xBounds[x + 1], yBounds[y], yBounds[y + 1]);
+      thread.resizeDeltaBuffer();
+    }
+    if (map.size() > 0) {
+      claimMovedCells(oldXBounds, oldYBounds);
+    }
+    haloFields.forEach(HaloField::resize);
+  }
+
+  /**
+   * Gives the cells each border moved across to the thread that owns them
+   * now. The rest of the cells keep their owners, so only strips as wide as
+   * the distance each border moved are visited.
+   */
+  private void claimMovedCells(int[] oldXBounds, int[] oldYBounds) {
+    int width = getTerrainSize();
+    for (int border = 1; border < xBounds.length - 1; border++) {
+      claimCells(Math.min(oldXBounds[border], xBounds[border]),
+              Math.max(oldXBounds[border], xBounds[border]), 0, width);
+    }
+    for (int border = 1; border < yBounds.length - 1; border++) {
+      claimCells(0, width, Math.min(oldYBounds[border], yBounds[border]),
+              Math.max(oldYBounds[border], yBounds[border]));
+    }
+  }
+
+  private void claimCells(int lowerX, int upperX, int lowerY, int upperY) {
+    int columns = xBounds.length - 1;
+    for (int y = lowerY; y < upperY; y++) {
+      int row = regionOf(yBounds, y) * columns;
+      for (int x = lowerX; x < upperX; x++) {
+        getCellAt(x, y).setParentThread(threadReferences.get(row + regionOf(xBounds, x)));
+      }
+    }
+  }
+
+  /**
+   * The region holding the position, region i covers [bounds[i],
+   * bounds[i + 1]).
+   */
+  private static int regionOf(int[] bounds, int position) {
+    int index = Arrays.binarySearch(bounds, position);
+    return (index >= 0) ? index : -index - 2;
+  }
+
+  /**
+   * Adds an amount to a field of a cell that may belong to another thread.
+   * The change is summed with every other change posted to the same field of
+   * the same cell and the owning thread applies the sum at the start of it's
+   * next frame. If the cell doesn't have a parent thread yet the change is
+   * applied right away.
+   *
+   * @param x The x coordinate of the cell
+   * @param y The y coordinate of the cell
+   * @param field The id of the field in the FieldStore
+   * @param amount The amount to add
+   */
+  public void postDelta(int x, int y, int field, float amount) {
+    MThread owner = getCellAt(x, y).getParentThread();
+    if (owner == null) {
+      applyDelta(x, y, field, amount);
+    } else {
+      owner.getDeltaBuffer().post(x, y, field, amount);
+    }
+  }
+
+  private void applyDelta(int x, int y, int field, float amount) {
+    fieldStore.add(field, calcIndex(x, y), amount);
+  }
+
+  @SuppressWarnings("unchecked")
   public void setMap(Map<Integer, C> map) {
     this.map = map;
+    if (map instanceof CellArrayMap) {
+      arrayMap = (CellArrayMap<C>) map;
+    } else {
+      arrayMap = null;
+    }
   }
 
   /**
@@ -178,6 +572,9 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
    */
   public final void pauseThreads() {
     hotSpotThread.pause();
+    if (scheduler != null) {
+      scheduler.pause();
+    }
     threadReferences.forEach(thread -> {
       thread.pause();
     });
@@ -188,6 +585,9 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
    */
   public final void playThreads() {
     hotSpotThread.play();
+    if (scheduler != null) {
+      scheduler.play();
+    }
     threadReferences.forEach(thread -> {
       thread.play();
     });
@@ -200,11 +600,92 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
    * milliseconds.
    */
   public final void setThreadsDelay(int delay) {
+    if (scheduler != null) {
+      scheduler.setDelay(delay);
+    }
     threadReferences.forEach(thread -> {
       thread.setDelay(delay);
     });
   }
 
+  /**
+   * Changes how the frames of all the threads are spaced out, except the hot
+   * spot thread. Headless runs can use <code>Pacing.UNTHROTTLED</code> to run
+   * as fast as possible.
+   *
+   * @param pacing The pacing of each frame
+   */
+  public final void setThreadsPacing(TaskRunner.Pacing pacing) {
+    if (scheduler != null) {
+      scheduler.setPacing(pacing);
+    }
+    threadReferences.forEach(thread -> {
+      thread.setPacing(pacing);
+    });
+  }
+
+  /**
+   * Runs all the threads at a fixed frame rate, except the hot spot thread.
+   *
+   * @param framesPerSecond The number of frames to run each second
+   */
+  public final void setThreadsFrameRate(double framesPerSecond) {
+    if (scheduler != null) {
+      scheduler.setTargetFrameRate(framesPerSecond);
+    }
+    threadReferences.forEach(thread -> {
+      thread.setTargetFrameRate(framesPerSecond);
+    });
+  }
+
+  /**
+   * Runs every thread through exactly the given number of frames, then halts
+   * the threads together at the waiting gate. The frames are counted at the
+   * gate so a surface that is already running stops after the same frame on
+   * every thread. This blocks until every thread has stopped, which makes it
+   * the simplest way to advance a surface with no one watching. The surface
+   * can be played again afterwards as normal. Only one thread should step a
+   * surface at a time.
+   *
+   * @param frames The number of frames to run
+   * @throws InterruptedException If interrupted while waiting for the frames
+   */
+  public void step(int frames) throws InterruptedException {
+    if (frames < 0) {
+      throw new IllegalArgumentException("Can't step a negative number of frames");
+    }
+    if (frames == 0) {
+      return;
+    }
+    List<? extends TaskRunner> runners = frameRunners();
+    CountDownLatch done = new CountDownLatch(runners.size());
+    stepDone = done;
+    frameBudget.set(frames);
+    runners.forEach(TaskRunner::play);
+    while (!done.await(100, TimeUnit.MILLISECONDS)) {
+      for (TaskRunner runner : runners) {
+        if (!runner.isExecuting()) {
+          frameBudget.set(-1);
+          throw new IllegalStateException("A thread stopped while stepping the surface");
+        }
+      }
+    }
+  }
+
+  /**
+   * Lets each thread run the tasks that don't share any fields at the same
+   * time. Only tasks that declare the fields they read and write can run
+   * alongside other tasks, the rest run in the order they were added.
+   *
+   * @param concurrent True to run independent tasks at the same time
+   * @see engine.util.task.TaskGraph
+   */
+  public final void setConcurrentTasks(boolean concurrent) {
+    threadReferences.forEach(thread -> {
+      thread.getManager().setConcurrent(concurrent);
+    });
+  }
+
   /**
    * When a new world is created certain configurations need to be reset or
    * re-initialized when a new world or surface. It's best to call the
@@ -248,9 +729,13 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
   }
 
   public void checkSubThreads() {
+    if (scheduler != null) {
+      prevSubThreadAvg = scheduler.timeLapse();
+      return;
+    }
     int avg = 0;
     for (MThread thread : threadReferences) {
-      avg = thread.timeLapse();
+      avg += thread.timeLapse();
     }
     prevSubThreadAvg = avg / threadReferences.size();
   }
@@ -295,6 +780,9 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
   }
 
   public void setThreadsAsContinuous(boolean c) {
+    if (scheduler != null) {
+      scheduler.setContinuous(c);
+    }
     threadReferences.forEach(thread -> {
       thread.setContinuous(c);
     });
@@ -312,40 +800,126 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
   /**
    * A separate method used for initializing the map. This method should be
    * called after the engine is created or if the map needs to be reset.
+   * The cells are generated one row at a time, each row with it's own Random
+   * seeded from the seed of this surface, so the same seed builds the same
+   * surface whether or not the rows are built in parallel.
    */
   protected void buildMap() {
     int terrainSize = getTerrainSize();
     int totalCells = (terrainSize * terrainSize);
-    int flagUpdate = totalCells / 4;
-    int generated = 0;
+    int flagUpdate = Math.max(terrainSize / 4, 1);
+    AtomicInteger rowsGenerated = new AtomicInteger();
+    List<C[]> rows = new ArrayList<>(terrainSize);
+    for (int y = 0; y < terrainSize; y++) {
+      rows.add(null);
+    }
     // Initialize the map
     map.clear();
     Logger.getLogger(SurfaceMap.class.getName()).log(Level.INFO, "Setting up map");
-    for (int x = 0; x < terrainSize; x++) {
-      for (int y = 0; y < terrainSize; y++) {
-        C generatedCell = generateCell(x, y);
+    IntStream rowStream = IntStream.range(0, terrainSize);
+    if (parallelBuild) {
+      rowStream = rowStream.parallel();
+    }
+    rowStream.forEach(y -> {
+      rows.set(y, generateRow(y, terrainSize));
+      logMapSetup(rowsGenerated.incrementAndGet(), flagUpdate, terrainSize);
+    });
+    int generated = 0;
+    for (C[] row : rows) {
+      for (C generatedCell : row) {
         if (generatedCell != null) {
           setCell(generatedCell);
           generated++;
-          logMapSetup(generated, flagUpdate, totalCells);
         }
       }
     }
+    Logger.getLogger(SurfaceMap.class.getName()).log(Level.INFO,
+            "Cells created: {0} of {1}", new Object[]{generated, totalCells});
+    haloFields.forEach(HaloField::fill);
+    publishers.forEach(SnapshotPublisher::fill);
   }
 
-  private void logMapSetup(int generated, int flagUpdate, int totalCells) {
+  @SuppressWarnings("unchecked")
+  private C[] generateRow(int y, int terrainSize) {
+    C[] row = (C[]) new Cell[terrainSize];
+    buildRandom.set(new Random(mixSeed(seed, y)));
+    try {
+      for (int x = 0; x < terrainSize; x++) {
+        row[x] = generateCell(x, y);
+      }
+    } finally {
+      buildRandom.remove();
+    }
+    return row;
+  }
+
+  /**
+   * Spreads the bits of the row over the seed so neighboring rows don't get
+   * correlated sequences from their Random.
+   */
+  private static long mixSeed(long seed, int row) {
+    long z = seed + (row + 1) * 0x9E3779B97F4A7C15L;
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  private void logMapSetup(int generated, int flagUpdate, int total) {
     if (generated % flagUpdate == 0) {
-      double finished = (double) generated / (double) totalCells;
+      double finished = (double) generated / (double) total;
       Logger.getLogger(SurfaceMap.class.getName()).log(Level.INFO,
               "Cells created: {0}% finished", Math.round(finished * 100));
     }
   }
 
+  /**
+   * The source of randomness for cells being constructed. While the map is
+   * being built this is the Random of the row being generated, which keeps the
+   * surface reproducible for a given seed. Outside of building the map this is
+   * the current thread's ThreadLocalRandom.
+   *
+   * @return The Random cells should use while they are constructed
+   */
+  public static Random random() {
+    Random random = buildRandom.get();
+    return random == null ? ThreadLocalRandom.current() : random;
+  }
+
+  /**
+   * Sets the seed used to build the map. Building the map again with the same
+   * seed will produce the same cells.
+   *
+   * @param seed The seed for the map
+   */
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  public long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Builds the rows of the map in parallel on the common fork join pool. The
+   * <code>generateCell(int, int)</code> method needs to be safe to call
+   * from multiple threads at the same time when this is enabled.
+   *
+   * @param parallelBuild True to generate the rows of the map in parallel
+   */
+  public void setParallelBuild(boolean parallelBuild) {
+    this.parallelBuild = parallelBuild;
+  }
+
+  public boolean isParallelBuild() {
+    return parallelBuild;
+  }
+
   /**
    * Sets up each individual thread for this surface. If you are using this
    * surface with multiple threads working on the same Map it is recommended to
    * setup the Map by calling the <code>setupDefaultMap()</code> method. This
-   * will setup the Map as a ConcurrentHashMap. Otherwise the Map data structure
+   * will setup the Map as a ConcurrentHashMap. The <code>setupArrayMap()</code>
+   * method is faster for large surfaces. Otherwise the Map data structure
    * needs to be able to handle multiple threads accessing it's contents at the
    * same time similar to how the ConcurrentHashMap functions.
    *
@@ -355,32 +929,198 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
    * @param delay The thread delay for each frame in milliseconds.
    */
   public final void setupThreads(int threadDivision, int delay) {
+    setupThreads(threadDivision, threadDivision, delay);
+  }
 
-    int threadCount = threadDivision * threadDivision;
-    waitingGate = new CyclicBarrier(threadCount);
-    int w = getTerrainSize() / threadDivision;
+  /**
+   * Sets up a columns x rows grid of threads. The surface doesn't need to
+   * divide evenly, the first regions along each axis take one extra cell
+   * each until the remainder is used up so every cell belongs to a thread.
+   * A grid with one row splits the surface into vertical strips.
+   *
+   * @param columns The number of threads along the x axis
+   * @param rows The number of threads along the y axis
+   * @param delay The thread delay for each frame in milliseconds.
+   * @see #setupThreads(int, int)
+   */
+  public final void setupThreads(int columns, int rows, int delay) {
+    if (columns < 1 || rows < 1) {
+      throw new IllegalArgumentException("Need at least one column and row of threads");
+    }
+    int threadCount = columns * rows;
+    waitingGate = new CyclicBarrier(threadCount, this::frameBarrier);
+    CyclicBarrier colorGate = new CyclicBarrier(threadCount);
+    xBounds = partition(getTerrainSize(), columns);
+    yBounds = partition(getTerrainSize(), rows);
     Boundaries bounds;
-    threadPool = Executors.newFixedThreadPool(threadCount + 1);
-    for (int y = 0; y < threadDivision; y++) {
-      for (int x = 0; x < threadDivision; x++) {
-        int lowerX = w * x;
-        int upperX = w * (x + 1);
-        int lowerY = w * y;
-        int upperY = w * (y + 1);
-        bounds = new Boundaries(lowerX, upperX, lowerY, upperY);
+    threadPool = threadMode.newExecutor(threadCount + 1);
+    for (int y = 0; y < rows; y++) {
+      for (int x = 0; x < columns; x++) {
+        bounds = new Boundaries(xBounds[x], xBounds[x + 1], yBounds[y], yBounds[y + 1]);
         MThread thread = new MThread(delay, bounds, waitingGate);
+        thread.setTraversal(getTraversal());
+        thread.getManager().setColorGate(colorGate::await);
+        thread.getDeltaBuffer().setSink(this::applyDelta);
         threadPool.submit(thread);
         threadReferences.add(thread);
       }
     }
     threadPool.submit(hotSpotThread);
-    addTaskToThreads(new SetParentThreads());
+    produceTasks(SetParentThreads::new);
+  }
+
+  /**
+   * Splits each frame into the given number of phases. Tasks run in the phase
+   * given by <code>Task.getPhase()</code> and every thread finishes a phase
+   * before any thread starts the next one. Tasks in the same phase run
+   * without waiting on each other. A single phase is the default, where
+   * threads only meet at the waiting gate. This needs to be called after the
+   * threads are setup and while they are paused.
+   *
+   * @param phaseCount The number of phases in each frame
+   */
+  public void setupPhases(int phaseCount) {
+    if (scheduler != null) {
+      scheduler.setPhaseCount(phaseCount);
+      return;
+    }
+    Phaser phaser = phaseCount > 1 ? new Phaser(threadReferences.size()) : null;
+    threadReferences.forEach(thread -> {
+      thread.setPhases(phaser, phaseCount);
+    });
+  }
+
+  /**
+   * Sets the kind of threads the MThreads run on. Virtual threads are cheap to
+   * park, which allows far more regions than there are cores. This needs to
+   * be called before the threads are setup.
+   *
+   * @param threadMode The kind of threads to use
+   */
+  public void setThreadMode(ThreadMode threadMode) {
+    this.threadMode = threadMode;
+  }
+
+  public ThreadMode getThreadMode() {
+    return threadMode;
+  }
+
+  /**
+   * Splits the surface into square tiles that are run on the common fork join
+   * pool instead of giving each region it's own thread. Each tile is an
+   * MThread that gets it's own tasks from <code>produceTasks</code> like any
+   * other thread, but the tiles are scheduled by a single TileScheduler that
+   * lets idle workers steal tiles from busy ones. Small tiles balance the work
+   * better, large tiles have less overhead per frame.
+   *
+   * @param tileSize The width of each tile, tiles along the far edges are
+   * clipped to the surface
+   * @param delay The delay for each frame in milliseconds.
+   */
+  public final void setupTiledThreads(int tileSize, int delay) {
+    setupTiledThreads(tileSize, delay, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Splits the surface into square tiles that are run on the given pool.
+   * Tiles can't wait on each other without tying up the workers of the pool
+   * so the tiles reject tasks with more than one color.
+   *
+   * @param tileSize The width of each tile
+   * @param delay The delay for each frame in milliseconds.
+   * @param pool The pool the tiles run on
+   * @see #setupTiledThreads(int, int)
+   */
+  public final void setupTiledThreads(int tileSize, int delay, ForkJoinPool pool) {
+    if (tileSize < 1) {
+      throw new IllegalArgumentException("The tile size must be positive");
+    }
+    int width = getTerrainSize();
+    List<MThread> tiles = new ArrayList<>();
+    for (int lowerY = 0; lowerY < width; lowerY += tileSize) {
+      for (int lowerX = 0; lowerX < width; lowerX += tileSize) {
+        Boundaries bounds = new Boundaries(lowerX, Math.min(lowerX + tileSize, width),
+                lowerY, Math.min(lowerY + tileSize, width));
+        MThread tile = new MThread(delay, bounds);
+        tile.setTraversal(getTraversal());
+        tile.getManager().rejectColoredTasks();
+        tile.getDeltaBuffer().setSink(this::applyDelta);
+        tiles.add(tile);
+        threadReferences.add(tile);
+      }
+    }
+    scheduler = new TileScheduler(delay, tiles, pool, this::frameBarrier);
+    threadPool = threadMode.newExecutor(2);
+    threadPool.submit(scheduler);
+    threadPool.submit(hotSpotThread);
+    produceTasks(SetParentThreads::new);
+  }
+
+  /**
+   * The scheduler running the tiles of this surface.
+   *
+   * @return The scheduler or null if the surface isn't using tiled threads
+   */
+  public TileScheduler getTileScheduler() {
+    return scheduler;
+  }
+
+  /**
+   * Sets up the given number of threads arranged in the grid closest to
+   * square, e.g. 6 threads are a 3 x 2 grid and 7 threads are 7 strips. This
+   * allows the thread count to match the number of cores on the machine.
+   *
+   * @param threadCount The total number of threads
+   * @param delay The thread delay for each frame in milliseconds.
+   */
+  public final void setupThreadCount(int threadCount, int delay) {
+    int[] grid = threadGrid(threadCount);
+    setupThreads(grid[0], grid[1], delay);
+  }
+
+  /**
+   * Finds the columns and rows of the grid closest to square that holds
+   * exactly the given number of threads. There are never more rows than
+   * columns.
+   *
+   * @param threadCount The total number of threads
+   * @return The number of columns and rows
+   */
+  public static int[] threadGrid(int threadCount) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("Need at least one thread");
+    }
+    int rows = (int) Math.sqrt(threadCount);
+    while (threadCount % rows != 0) {
+      rows--;
+    }
+    return new int[]{threadCount / rows, rows};
+  }
+
+  /**
+   * Splits a length into the given number of parts as evenly as possible. The
+   * first <code>length % parts</code> parts are one longer than the rest.
+   *
+   * @param length The length being split
+   * @param parts The number of parts
+   * @return The bounds of each part, part i covers [bounds[i], bounds[i + 1])
+   */
+  public static int[] partition(int length, int parts) {
+    int[] bounds = new int[parts + 1];
+    int size = length / parts, remainder = length % parts;
+    for (int i = 0; i < parts; i++) {
+      bounds[i + 1] = bounds[i] + size + (i < remainder ? 1 : 0);
+    }
+    return bounds;
   }
 
   /**
    * Shuts down all threads in the pool.
    */
   public void killAllThreads() {
+    if (scheduler != null) {
+      scheduler.kill();
+    }
     threadReferences.forEach(thread -> {
       thread.kill();
     });
@@ -389,7 +1129,9 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
   }
 
   /**
-   * Sets up the surface further by setting each cell the parent thread.
+   * Sets up the surface further by setting each cell the parent thread. Each
+   * thread needs it's own instance since the cells are given the thread the
+   * task belongs to.
    */
   protected class SetParentThreads extends TaskAdapter {
 
@@ -446,7 +1188,7 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
    * data doesn't exist or if the data is locked by another thread.
    */
   public C getCellAt(int index) {
-    C c = map.get(index);
+    C c = (arrayMap != null) ? arrayMap.get(index) : map.get(index);
     if (c == null) {
       throw new IllegalArgumentException("The index " 
               + index + " (" + calcX(index) + ", " + calcY(index) + ") doesn't exist");
@@ -486,19 +1228,170 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
   private void setCell(C cell) {
     int x = cell.getX(), y = cell.getY();
     int index = calcIndex(x, y);
-    map.put(index, cell);
+    if (arrayMap != null) {
+      arrayMap.put(index, cell);
+    } else {
+      map.put(index, cell);
+    }
+  }
+
+  /**
+   * Calls the action with the index of each of the eight cells around the
+   * given cell, in the order of <code>DIR_X_INDEX</code>. The neighbors
+   * wrap around the edges of the surface. Nothing is allocated per call.
+   *
+   * @param x The x coordinate of the center cell
+   * @param y The y coordinate of the center cell
+   * @param action Called with the index of each neighbor
+   */
+  public void forEachNeighbor(int x, int y, IntConsumer action) {
+    for (int d = 0; d < neighborX.length; d++) {
+      action.accept(calcIndex(neighborX[d][x], neighborY[d][y]));
+    }
+  }
+
+  /**
+   * Calls the action with the index of each of the eight cells around the
+   * given cell.
+   *
+   * @param index The index of the center cell
+   * @param action Called with the index of each neighbor
+   * @see #forEachNeighbor(int, int, java.util.function.IntConsumer)
+   */
+  public void forEachNeighbor(int index, IntConsumer action) {
+    forEachNeighbor(calcX(index), calcY(index), action);
+  }
+
+  /**
+   * Calls the action with the index of each of the four cells sharing an edge
+   * with the given cell, in the order of <code>HDIR_X_INDEX</code>. The cells
+   * wrap around the edges of the surface.
+   *
+   * @param x The x coordinate of the center cell
+   * @param y The y coordinate of the center cell
+   * @param action Called with the index of each adjacent cell
+   */
+  public void forEachAdjacent(int x, int y, IntConsumer action) {
+    for (int d = 0; d < adjacentX.length; d++) {
+      action.accept(calcIndex(adjacentX[d][x], adjacentY[d][y]));
+    }
+  }
+
+  /**
+   * Fills the given array with the indexes of the eight cells around the given
+   * cell, in the order of <code>DIR_X_INDEX</code>.
+   *
+   * @param x The x coordinate of the center cell
+   * @param y The y coordinate of the center cell
+   * @param indexes The array receiving the indexes, at least 8 long
+   * @return The array given
+   */
+  public int[] getNeighborIndexes(int x, int y, int[] indexes) {
+    for (int d = 0; d < neighborX.length; d++) {
+      indexes[d] = calcIndex(neighborX[d][x], neighborY[d][y]);
+    }
+    return indexes;
+  }
+
+  /**
+   * Lays the cells out in memory as square tiles instead of rows. Each tile is
+   * stored contiguously in row-major order and the tiles themselves are stored
+   * in row-major order. Stencil tasks that visit a cell's neighbors stay inside
+   * of one or two tiles instead of touching three distant rows, and each
+   * thread visits it's region one tile at a time to match. This needs to be
+   * called before the map and FieldStore are setup since it changes the index
+   * of each cell.
+   *
+   * @param tileSize The width of a tile, must be a power of 2. Zero restores
+   * the row-major layout.
+   */
+  public void setTiledLayout(int tileSize) {
+    if (tileSize < 0 || (tileSize & (tileSize - 1)) != 0) {
+      throw new IllegalArgumentException("The tile size must be a power of 2");
+    }
+    this.tileSize = tileSize;
+    if (tileSize > 0) {
+      tileShift = Integer.numberOfTrailingZeros(tileSize);
+      tileMask = tileSize - 1;
+      tilesPerRow = (getTerrainSize() + tileMask) >> tileShift;
+    }
+    Traversal traversal = getTraversal();
+    threadReferences.forEach(thread -> {
+      thread.setTraversal(traversal);
+    });
+  }
+
+  /**
+   * The traversal that visits cells in the same order they are laid out in
+   * memory.
+   *
+   * @return The traversal matching this surface's layout
+   */
+  public Traversal getTraversal() {
+    return tileSize == 0 ? Traversal.ROW_MAJOR : Traversal.tiled(tileSize);
+  }
+
+  /**
+   * The number of indexes the layout of this surface uses. For a row-major
+   * layout this is the total number of cells, a tiled layout pads the surface
+   * to a whole number of tiles.
+   *
+   * @return The largest index plus one
+   */
+  public int getIndexCapacity() {
+    if (tileSize == 0) {
+      return getTotalNumberOfCells();
+    }
+    return (tilesPerRow * tilesPerRow) << (tileShift << 1);
+  }
+
+  /**
+   * Visits a run of cells that sit next to each other in a row and in memory.
+   */
+  public interface RunVisitor {
+
+    void visit(int x, int y, int index, int length) throws Exception;
+  }
+
+  /**
+   * Splits the bounds into runs of consecutive indexes so a task can work on
+   * the field columns directly. A row-major layout has one run per row of the
+   * bounds, a tiled layout has one run for each tile a row passes through.
+   *
+   * @param bounds The region being visited, the upper bounds are exclusive
+   * @param visitor Called with the first cell, it's index and the length of
+   * each run
+   * @throws Exception Any exception thrown by the visitor
+   */
+  public void forEachRun(Boundaries bounds, RunVisitor visitor) throws Exception {
+    int lowerX = bounds.getLowerXBound(), upperX = bounds.getUpperXBound();
+    for (int y = bounds.getLowerYBound(); y < bounds.getUpperYBound(); y++) {
+      if (tileSize == 0) {
+        visitor.visit(lowerX, y, calcIndex(lowerX, y), upperX - lowerX);
+        continue;
+      }
+      for (int x = lowerX; x < upperX;) {
+        int end = Math.min(((x >> tileShift) + 1) << tileShift, upperX);
+        visitor.visit(x, y, calcIndex(x, y), end - x);
+        x = end;
+      }
+    }
   }
 
   /**
    * Calculates the index for the element located at (x, y) based on the width
-   * of a square map.
+   * of a square map and the layout of the surface.
    *
    * @param x The x coordinate
    * @param y The y coordinate
    * @return The index corresponding to the x and y location
    */
   public int calcIndex(int x, int y) {
-    return (getTerrainSize() * y) + x;
+    if (tileSize == 0) {
+      return (getTerrainSize() * y) + x;
+    }
+    int tile = ((y >> tileShift) * tilesPerRow) + (x >> tileShift);
+    return (tile << (tileShift << 1)) + ((y & tileMask) << tileShift) + (x & tileMask);
   }
 
   /**
@@ -509,7 +1402,11 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
    * @return The x coordinate
    */
   public int calcX(int index) {
-    return index % getTerrainSize();
+    if (tileSize == 0) {
+      return index % getTerrainSize();
+    }
+    int tile = index >> (tileShift << 1);
+    return ((tile % tilesPerRow) << tileShift) + (index & tileMask);
   }
 
   /**
@@ -520,7 +1417,11 @@ public abstract class SurfaceMap<C extends Cell> extends TerrainQuad {
    * @return The y coordinate
    */
   public int calcY(int index) {
-    return index / getTerrainSize();
+    if (tileSize == 0) {
+      return index / getTerrainSize();
+    }
+    int tile = index >> (tileShift << 1);
+    return ((tile / tilesPerRow) << tileShift) + ((index >> tileShift) & tileMask);
   }
 
 }
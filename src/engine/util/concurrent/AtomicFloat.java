@@ -3,6 +3,13 @@ package engine.util.concurrent;
 import java.util.concurrent.atomic.AtomicInteger;
 import static java.lang.Float.*;
 
+/**
+ * A float that may be updated atomically. The value is kept as it's bits in
+ * an AtomicInteger, the arithmetic updates retry a compare and set until no
+ * other thread has changed the value in between.
+ *
+ * @author Richard DeSilvey
+ */
 public class AtomicFloat extends Number {
 
   private AtomicInteger bits;
@@ -37,6 +44,71 @@ public class AtomicFloat extends Number {
             floatToIntBits(update));
   }
 
+  /**
+   * Atomically adds to the current value.
+   *
+   * @param delta The amount to add
+   * @return The previous value
+   */
+  public final float getAndAdd(float delta) {
+    return getAndUpdate(value -> value + delta);
+  }
+
+  /**
+   * Atomically adds to the current value.
+   *
+   * @param delta The amount to add
+   * @return The updated value
+   */
+  public final float addAndGet(float delta) {
+    return updateAndGet(value -> value + delta);
+  }
+
+  /**
+   * Atomically replaces the current value with the result of the function.
+   * The function may be called more than once if other threads update the
+   * value at the same time, so it shouldn't have side effects.
+   *
+   * @param function Calculates the new value from the current value
+   * @return The previous value
+   */
+  public final float getAndUpdate(FloatUnaryOperator function) {
+    int prev, next;
+    do {
+      prev = bits.get();
+      next = floatToRawIntBits(function.applyAsFloat(intBitsToFloat(prev)));
+    } while (!bits.compareAndSet(prev, next));
+    return intBitsToFloat(prev);
+  }
+
+  /**
+   * Atomically replaces the current value with the result of the function.
+   *
+   * @param function Calculates the new value from the current value
+   * @return The updated value
+   * @see #getAndUpdate(engine.util.concurrent.FloatUnaryOperator)
+   */
+  public final float updateAndGet(FloatUnaryOperator function) {
+    int prev, next;
+    do {
+      prev = bits.get();
+      next = floatToRawIntBits(function.applyAsFloat(intBitsToFloat(prev)));
+    } while (!bits.compareAndSet(prev, next));
+    return intBitsToFloat(next);
+  }
+
+  /**
+   * Atomically combines the current value with x, e.g.
+   * <code>accumulateAndGet(height, Math::max)</code> keeps a running maximum.
+   *
+   * @param x The value combined with the current value
+   * @param function Combines the current value with x
+   * @return The updated value
+   */
+  public final float accumulateAndGet(float x, FloatBinaryOperator function) {
+    return updateAndGet(value -> function.applyAsFloat(value, x));
+  }
+
   public double doubleValue() {
     return (double) floatValue();
   }
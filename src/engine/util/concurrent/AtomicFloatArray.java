@@ -0,0 +1,149 @@
+package engine.util.concurrent;
+
+import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static java.lang.Float.floatToRawIntBits;
+import static java.lang.Float.intBitsToFloat;
+
+/**
+ * An array of floats where each element may be updated atomically. The
+ * values are kept as their bits in a single AtomicIntegerArray so a column of
+ * per-cell values needs one object instead of an AtomicFloat for each cell.
+ *
+ * @author Richard DeSilvey
+ */
+public class AtomicFloatArray implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+
+  private final AtomicIntegerArray bits;
+
+  /**
+   * Creates a new array with every element set to zero.
+   *
+   * @param length The number of elements
+   */
+  public AtomicFloatArray(int length) {
+    // Zero bits are 0f
+    bits = new AtomicIntegerArray(length);
+  }
+
+  public final int length() {
+    return bits.length();
+  }
+
+  public final float get(int i) {
+    return intBitsToFloat(bits.get(i));
+  }
+
+  public final void set(int i, float newValue) {
+    bits.set(i, floatToRawIntBits(newValue));
+  }
+
+  /**
+   * Eventually sets the element, other threads may see the old value for a
+   * short time.
+   *
+   * @param i The index of the element
+   * @param newValue The new value
+   */
+  public final void lazySet(int i, float newValue) {
+    bits.lazySet(i, floatToRawIntBits(newValue));
+  }
+
+  public final float getAndSet(int i, float newValue) {
+    return intBitsToFloat(bits.getAndSet(i, floatToRawIntBits(newValue)));
+  }
+
+  /**
+   * Sets the element if it's current value is the expected value. The values
+   * are compared by their bits, so 0f and -0f are different and NaN matches
+   * itself.
+   *
+   * @param i The index of the element
+   * @param expect The expected value
+   * @param update The new value
+   * @return True if the element was set
+   */
+  public final boolean compareAndSet(int i, float expect, float update) {
+    return bits.compareAndSet(i, floatToRawIntBits(expect), floatToRawIntBits(update));
+  }
+
+  /**
+   * Atomically adds to an element.
+   *
+   * @param i The index of the element
+   * @param delta The amount to add
+   * @return The previous value
+   */
+  public final float getAndAdd(int i, float delta) {
+    int prev, next;
+    do {
+      prev = bits.get(i);
+      next = floatToRawIntBits(intBitsToFloat(prev) + delta);
+    } while (!bits.compareAndSet(i, prev, next));
+    return intBitsToFloat(prev);
+  }
+
+  /**
+   * Atomically adds to an element.
+   *
+   * @param i The index of the element
+   * @param delta The amount to add
+   * @return The updated value
+   */
+  public final float addAndGet(int i, float delta) {
+    return getAndAdd(i, delta) + delta;
+  }
+
+  /**
+   * Atomically replaces an element with the result of the function. The
+   * function may be called more than once if other threads update the element
+   * at the same time, so it shouldn't have side effects.
+   *
+   * @param i The index of the element
+   * @param function Calculates the new value from the current value
+   * @return The updated value
+   */
+  public final float updateAndGet(int i, FloatUnaryOperator function) {
+    int prev;
+    float next;
+    do {
+      prev = bits.get(i);
+      next = function.applyAsFloat(intBitsToFloat(prev));
+    } while (!bits.compareAndSet(i, prev, floatToRawIntBits(next)));
+    return next;
+  }
+
+  /**
+   * Atomically combines an element with x.
+   *
+   * @param i The index of the element
+   * @param x The value combined with the element
+   * @param function Combines the current value with x
+   * @return The updated value
+   */
+  public final float accumulateAndGet(int i, float x, FloatBinaryOperator function) {
+    int prev;
+    float next;
+    do {
+      prev = bits.get(i);
+      next = function.applyAsFloat(intBitsToFloat(prev), x);
+    } while (!bits.compareAndSet(i, prev, floatToRawIntBits(next)));
+    return next;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (int i = 0; i < length(); i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(get(i));
+    }
+    return builder.append(']').toString();
+  }
+
+}
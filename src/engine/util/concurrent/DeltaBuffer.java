@@ -0,0 +1,157 @@
+package engine.util.concurrent;
+
+import engine.util.task.Boundaries;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Collects changes to the fields of the cells in a thread's region posted by
+ * other threads. Instead of an Event for each change, every change to the
+ * same field of the same cell is added together as it's posted and the owning
+ * thread applies a single sum for each cell at the start of it's next frame.
+ * Nothing is allocated per change, the sums for a field are allocated the
+ * first time a change to that field is posted.
+ *
+ * @author Richard DeSilvey
+ */
+public class DeltaBuffer {
+
+  /**
+   * Applies the summed changes to the cells.
+   */
+  public interface DeltaSink {
+
+    /**
+     * Applies the sum of the changes posted for a field of a cell.
+     *
+     * @param x The x coordinate of the cell
+     * @param y The y coordinate of the cell
+     * @param field The id of the field
+     * @param amount The sum of the changes
+     */
+    void apply(int x, int y, int field, float amount);
+  }
+
+  /**
+   * The largest number of fields changes can be posted to.
+   */
+  public static final int MAX_FIELDS = 64;
+
+  private final int lowerX, lowerY, width, height, cellCount;
+  private final AtomicReferenceArray<FieldDeltas> fields;
+  private volatile DeltaSink sink;
+
+  /**
+   * Creates a new buffer for the cells inside of the bounds.
+   *
+   * @param bounds The region of the owning thread
+   */
+  public DeltaBuffer(Boundaries bounds) {
+    lowerX = bounds.getLowerXBound();
+    lowerY = bounds.getLowerYBound();
+    width = Math.max(bounds.getUpperXBound() - lowerX, 0);
+    height = Math.max(bounds.getUpperYBound() - lowerY, 0);
+    cellCount = width * height;
+    fields = new AtomicReferenceArray<>(MAX_FIELDS);
+  }
+
+  public void setSink(DeltaSink sink) {
+    this.sink = sink;
+  }
+
+  public DeltaSink getSink() {
+    return sink;
+  }
+
+  /**
+   * Adds a change to a field of a cell in this region. Any thread can post a
+   * change.
+   *
+   * @param x The x coordinate of the cell
+   * @param y The y coordinate of the cell
+   * @param field The id of the field
+   * @param amount The amount to add to the field
+   * @throws IllegalArgumentException If the cell isn't in this region or the
+   * field isn't between zero and MAX_FIELDS
+   */
+  public void post(int x, int y, int field, float amount) {
+    int localX = x - lowerX, localY = y - lowerY;
+    if (localX < 0 || localX >= width || localY < 0 || localY >= height) {
+      throw new IllegalArgumentException("The cell (" + x + ", " + y + ") isn't in this region");
+    }
+    if (field < 0 || field >= MAX_FIELDS) {
+      throw new IllegalArgumentException("The field " + field + " isn't between 0 and "
+              + MAX_FIELDS);
+    }
+    getFieldDeltas(field).add((localY * width) + localX, amount);
+  }
+
+  private FieldDeltas getFieldDeltas(int field) {
+    FieldDeltas deltas = fields.get(field);
+    if (deltas == null) {
+      fields.compareAndSet(field, null, new FieldDeltas(cellCount));
+      deltas = fields.get(field);
+    }
+    return deltas;
+  }
+
+  /**
+   * Applies the sum of the changes posted to each cell and clears them. Only
+   * the owning thread can call this method.
+   *
+   * @return The number of cells changed
+   */
+  public int drain() {
+    DeltaSink target = sink;
+    if (target == null) {
+      return 0;
+    }
+    int applied = 0;
+    for (int field = 0; field < MAX_FIELDS; field++) {
+      FieldDeltas deltas = fields.get(field);
+      if (deltas != null) {
+        applied += deltas.drain(field, target);
+      }
+    }
+    return applied;
+  }
+
+  private class FieldDeltas {
+
+    private final AtomicFloatArray sums;
+    private final AtomicLongArray dirty;
+
+    FieldDeltas(int cellCount) {
+      sums = new AtomicFloatArray(cellCount);
+      dirty = new AtomicLongArray((cellCount + 63) >>> 6);
+    }
+
+    void add(int local, float amount) {
+      sums.getAndAdd(local, amount);
+      // Marked after the sum so a drain that misses the mark gets it next frame
+      int word = local >>> 6;
+      long bit = 1L << local;
+      if ((dirty.get(word) & bit) == 0) {
+        dirty.accumulateAndGet(word, bit, (a, b) -> a | b);
+      }
+    }
+
+    int drain(int field, DeltaSink target) {
+      int applied = 0;
+      for (int word = 0; word < dirty.length(); word++) {
+        long marks = dirty.get(word) == 0 ? 0 : dirty.getAndSet(word, 0);
+        while (marks != 0) {
+          int local = (word << 6) + Long.numberOfTrailingZeros(marks);
+          marks &= marks - 1;
+          float amount = sums.getAndSet(local, 0);
+          if (amount != 0) {
+            target.apply(lowerX + (local % width), lowerY + (local / width), field, amount);
+            applied++;
+          }
+        }
+      }
+      return applied;
+    }
+  }
+
+}
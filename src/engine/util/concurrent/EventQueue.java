@@ -0,0 +1,120 @@
+package engine.util.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded ring buffer of events with many producers and a single consumer.
+ * Any thread can offer an event but only the owning thread drains them. The
+ * buffer never grows, an event offered to a full queue is rejected and
+ * counted so the producer can hold on to it and try again later. Each slot
+ * has a sequence number that tells producers when the slot is free and the
+ * consumer when the event in it has been published.
+ *
+ * @author Richard DeSilvey
+ */
+public class EventQueue {
+
+  private final int capacity, mask;
+  private final AtomicReferenceArray<Event> events;
+  private final AtomicLongArray sequences;
+  private final AtomicLong tail, rejected;
+  private long head;
+
+  /**
+   * Creates a new queue.
+   *
+   * @param capacity The maximum number of events waiting in the queue, must
+   * be a power of 2
+   */
+  public EventQueue(int capacity) {
+    if (capacity < 1 || (capacity & (capacity - 1)) != 0) {
+      throw new IllegalArgumentException("The capacity must be a power of 2");
+    }
+    this.capacity = capacity;
+    mask = capacity - 1;
+    events = new AtomicReferenceArray<>(capacity);
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    tail = new AtomicLong();
+    rejected = new AtomicLong();
+    head = 0;
+  }
+
+  /**
+   * Adds an event to the queue. Any thread can call this method.
+   *
+   * @param event The event being added
+   * @return False if the queue is full and the event was rejected
+   */
+  public boolean offer(Event event) {
+    while (true) {
+      long position = tail.get();
+      int slot = (int) (position & mask);
+      long difference = sequences.get(slot) - position;
+      if (difference == 0) {
+        if (tail.compareAndSet(position, position + 1)) {
+          events.set(slot, event);
+          sequences.set(slot, position + 1);
+          return true;
+        }
+      } else if (difference < 0) {
+        rejected.incrementAndGet();
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Executes each event that was in the queue when this method was called and
+   * removes it. Events added while draining are left for the next drain, as
+   * are events a producer hasn't finished adding. Only the owning thread can
+   * call this method.
+   *
+   * @return The number of events executed
+   */
+  public int drain() {
+    long limit = tail.get();
+    int executed = 0;
+    while (head < limit) {
+      int slot = (int) (head & mask);
+      if (sequences.get(slot) != head + 1) {
+        break;
+      }
+      Event event = events.get(slot);
+      events.set(slot, null);
+      sequences.set(slot, head + capacity);
+      head++;
+      event.execute();
+      executed++;
+    }
+    return executed;
+  }
+
+  /**
+   * The number of events waiting to be drained. This is only an estimate
+   * while other threads are adding events.
+   *
+   * @return The number of events in the queue
+   */
+  public int size() {
+    return (int) Math.max(0, Math.min(capacity, tail.get() - head));
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * The number of events rejected because the queue was full.
+   *
+   * @return The total number of rejected events
+   */
+  public long getRejectedCount() {
+    return rejected.get();
+  }
+
+}
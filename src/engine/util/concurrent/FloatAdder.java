@@ -0,0 +1,121 @@
+package engine.util.concurrent;
+
+/**
+ * A float sum for totals that many threads add to at the same time, such as
+ * the total heat of the planet. Each thread adds to one of several stripes
+ * chosen by the thread so they rarely compete for the same value, the sum is
+ * only added up when it's read. The stripes are spread apart, with padding
+ * before the first and after the last, so they don't share a cache line with
+ * each other or with the header of the array.
+ *
+ * @author Richard DeSilvey
+ */
+public class FloatAdder extends Number {
+
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The distance in elements between each stripe, 64 bytes.
+   */
+  private static final int SPACING = 16;
+
+  private final int stripes;
+  private final AtomicFloatArray values;
+
+  /**
+   * Creates a new adder with a stripe for each available processor.
+   */
+  public FloatAdder() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Creates a new adder.
+   *
+   * @param stripes The number of separate sums
+   */
+  public FloatAdder(int stripes) {
+    if (stripes < 1) {
+      throw new IllegalArgumentException("Need at least one stripe");
+    }
+    this.stripes = stripes;
+    values = new AtomicFloatArray((stripes + 2) * SPACING);
+  }
+
+  /**
+   * The element of the array a stripe is kept in, the first stripe starts one
+   * spacing in so it's away from the array header.
+   */
+  private static int slot(int stripe) {
+    return (stripe + 1) * SPACING;
+  }
+
+  /**
+   * Adds to the sum.
+   *
+   * @param amount The amount to add
+   */
+  public void add(float amount) {
+    long id = Thread.currentThread().getId();
+    int stripe = (int) ((id ^ (id >>> 16)) % stripes);
+    values.getAndAdd(slot(stripe), amount);
+  }
+
+  /**
+   * Adds up the stripes. Additions made while summing may or may not be
+   * included.
+   *
+   * @return The current sum
+   */
+  public float sum() {
+    float sum = 0;
+    for (int stripe = 0; stripe < stripes; stripe++) {
+      sum += values.get(slot(stripe));
+    }
+    return sum;
+  }
+
+  /**
+   * Adds up the stripes and sets each one back to zero. Additions made while
+   * summing are either included or kept for the next sum, never lost.
+   *
+   * @return The sum before the reset
+   */
+  public float sumThenReset() {
+    float sum = 0;
+    for (int stripe = 0; stripe < stripes; stripe++) {
+      sum += values.getAndSet(slot(stripe), 0);
+    }
+    return sum;
+  }
+
+  public void reset() {
+    sumThenReset();
+  }
+
+  @Override
+  public float floatValue() {
+    return sum();
+  }
+
+  @Override
+  public double doubleValue() {
+    return sum();
+  }
+
+  @Override
+  public int intValue() {
+    return (int) sum();
+  }
+
+  @Override
+  public long longValue() {
+    return (long) sum();
+  }
+
+  @Override
+  public String toString() {
+    return Float.toString(sum());
+  }
+
+}
@@ -0,0 +1,12 @@
+package engine.util.concurrent;
+
+/**
+ * An operation on two floats, the primitive form of a BinaryOperator.
+ *
+ * @author Richard DeSilvey
+ */
+@FunctionalInterface
+public interface FloatBinaryOperator {
+
+  float applyAsFloat(float left, float right);
+}
@@ -0,0 +1,12 @@
+package engine.util.concurrent;
+
+/**
+ * An operation on a single float, the primitive form of a UnaryOperator.
+ *
+ * @author Richard DeSilvey
+ */
+@FunctionalInterface
+public interface FloatUnaryOperator {
+
+  float applyAsFloat(float operand);
+}
@@ -4,7 +4,8 @@ import java.util.concurrent.CyclicBarrier;
 import engine.util.task.Boundaries;
 import engine.util.task.Task;
 import engine.util.task.TaskManager;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import engine.util.task.Traversal;
+import java.util.concurrent.Phaser;
 
 /**
  * A surface can be broken up into sections where a MThread can modify and
@@ -15,17 +16,46 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 public class MThread extends TaskRunner {
 
   private final TaskManager manager;
+  /**
+   * Tasks that run after all the other tasks have finished on each frame,
+   * such as copying the region of this thread into a buffer before the
+   * threads meet at the waiting gate.
+   */
+  private final TaskManager syncManager;
   /**
    * Other threads may want to update or apply an event to other cells
    * not belonging to that thread. The other thread will post an update to
    * this thread to process the event using the queue.
    */
-  private final ConcurrentLinkedDeque<Event> eventQueue;
+  private final EventQueue eventQueue;
+
+  /**
+   * The number of events each thread can hold before rejecting new events.
+   */
+  public static final int EVENT_CAPACITY = 4096;
+
+  /**
+   * Changes to the fields of this thread's cells posted by other threads.
+   */
+  private DeltaBuffer deltas;
+
+  /**
+   * The time the last frame spent on tasks, not counting the time waiting
+   * for the other threads.
+   */
+  private volatile long workNanos;
   
   private static final boolean CONTINUOUS = true;
 
   private final CyclicBarrier waitingGate;
 
+  /**
+   * Synchronizes the phases of a frame with the other threads, null if the
+   * frame has a single phase.
+   */
+  private Phaser phaser;
+  private int phaseCount;
+
   public MThread(int delay) {
     this(delay, new Boundaries(0, 0), new CyclicBarrier(1));
   }
@@ -45,32 +75,176 @@ public class MThread extends TaskRunner {
     super(delay, CONTINUOUS);
     this.waitingGate = waitingGate;
     manager = new TaskManager(bounds);
-    eventQueue = new ConcurrentLinkedDeque<>();
+    syncManager = new TaskManager(bounds);
+    eventQueue = new EventQueue(EVENT_CAPACITY);
+    deltas = new DeltaBuffer(bounds);
+    phaseCount = 1;
   }
 
   @Override
   public final void update() throws Exception {
     waitingGate.await();
-    processEventQueue();
-    manager.performTasks();
-    manager.trimTasks();
+    if (consumeHalt()) {
+      return;
+    }
+    runFrame();
   }
 
-  public void pushEvent(Event event) {
-    eventQueue.push(event);
+  /**
+   * The time the last frame spent running tasks, unlike the frame time this
+   * doesn't include the time spent waiting at the gate or between phases.
+   *
+   * @return The time in nanoseconds
+   */
+  public long workNanos() {
+    return workNanos;
   }
-  
-  public void processEventQueue() {
-    eventQueue.forEach(event -> {
-      event.execute();
-    });
+
+  /**
+   * Runs a single frame of this thread's tasks without waiting at the gate.
+   * A TileScheduler calls this directly for each of it's tiles.
+   *
+   * @throws Exception Any exception thrown by a task
+   */
+  final void runFrame() throws Exception {
+    long start = System.nanoTime();
+    if (phaseCount == 1) {
+      processEventQueue();
+      manager.performTasks();
+      manager.trimTasks();
+      syncManager.performTasks();
+      workNanos = System.nanoTime() - start;
+      return;
+    }
+    long work = 0;
+    for (int phase = 0; phase < phaseCount; phase++) {
+      runPhase(phase);
+      work += System.nanoTime() - start;
+      if (phaser != null && phase < phaseCount - 1) {
+        phaser.awaitAdvanceInterruptibly(phaser.arrive());
+      }
+      start = System.nanoTime();
+    }
+    workNanos = work;
+  }
+
+  /**
+   * Runs the tasks of a single phase of the frame. Events are processed at
+   * the start of the first phase and sync tasks run at the end of the last.
+   *
+   * @param phase The phase to run
+   * @throws Exception Any exception thrown by a task
+   */
+  final void runPhase(int phase) throws Exception {
+    int lastPhase = phaseCount - 1;
+    if (phase == 0) {
+      processEventQueue();
+    }
+    manager.performTasks(phase, lastPhase);
+    if (phase == lastPhase) {
+      manager.trimTasks();
+      syncManager.performTasks();
+    }
+  }
+
+  /**
+   * Splits each frame into phases. Between each phase this thread waits at
+   * the phaser for the other threads sharing it.
+   *
+   * @param phaser Shared by all the threads working on the surface, or null
+   * if the phases are synchronized by a TileScheduler
+   * @param phaseCount The number of phases in each frame
+   */
+  public void setPhases(Phaser phaser, int phaseCount) {
+    if (phaseCount < 1) {
+      throw new IllegalArgumentException("A frame needs at least one phase");
+    }
+    this.phaser = phaser;
+    this.phaseCount = phaseCount;
+  }
+
+  public int getPhaseCount() {
+    return phaseCount;
+  }
+
+  /**
+   * Posts an event for this thread to execute at the start of it's next
+   * frame. Any thread can post an event.
+   *
+   * @param event The event to execute
+   * @return False if the queue is full and the event was rejected, the
+   * caller can keep the event and try again on a later frame
+   */
+  public boolean pushEvent(Event event) {
+    return eventQueue.offer(event);
+  }
+
+  /**
+   * Executes and removes each event posted to this thread then applies the
+   * changes posted to the fields of this thread's cells. Events posted while
+   * the queue is being processed wait until the next frame.
+   *
+   * @return The number of events executed
+   */
+  public int processEventQueue() {
+    int executed = eventQueue.drain();
+    deltas.drain();
+    return executed;
+  }
+
+  public DeltaBuffer getDeltaBuffer() {
+    return deltas;
+  }
+
+  /**
+   * Applies any posted changes then sizes the delta buffer to the current
+   * bounds of this thread. This needs to be called after the bounds change
+   * while no thread is running a frame.
+   */
+  public void resizeDeltaBuffer() {
+    deltas.drain();
+    DeltaBuffer resized = new DeltaBuffer(manager.getBounds());
+    resized.setSink(deltas.getSink());
+    deltas = resized;
   }
 
+  public EventQueue getEventQueue() {
+    return eventQueue;
+  }
+
+  /**
+   * Adds a task to this thread only. A task with more than one color meets
+   * the other threads between it's passes, so it needs to be added to every
+   * thread of the surface instead.
+   *
+   * @param task The task being added
+   * @see Task#getColors()
+   */
   public final void addTask(Task task) {
     task.setThread(this);
     manager.addTask(task);
   }
 
+  /**
+   * Adds a task that runs on each frame after every regular task finishes.
+   *
+   * @param task The task being added
+   */
+  public final void addSyncTask(Task task) {
+    task.setThread(this);
+    syncManager.addTask(task);
+  }
+
+  /**
+   * Sets the order cells are visited in by this thread's tasks.
+   *
+   * @param traversal The order to visit cells in
+   */
+  public void setTraversal(Traversal traversal) {
+    manager.setTraversal(traversal);
+    syncManager.setTraversal(traversal);
+  }
+
   public TaskManager getManager() {
     return manager;
   }
@@ -1,8 +1,10 @@
 package engine.util.concurrent;
 
-import java.util.concurrent.BrokenBarrierException;
-import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Modified Runnable class.
@@ -11,6 +13,32 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public abstract class TaskRunner implements Runnable {
 
+  /**
+   * How a runner spaces out it's frames.
+   */
+  public enum Pacing {
+    /**
+     * Sleeps for the delay after each frame no matter how long the frame
+     * took.
+     */
+    DELAY,
+    /**
+     * Starts frames at a fixed rate. A frame that runs long is followed by
+     * frames without any wait until the runner catches up.
+     */
+    FIXED_RATE,
+    /**
+     * Starts the next frame as soon as the last one finishes.
+     */
+    UNTHROTTLED
+  }
+
+  /**
+   * The most frames a fixed rate runner will rush through to catch up before
+   * it gives up on the missed time.
+   */
+  private static final int MAX_CATCH_UP_FRAMES = 5;
+
   /**
    * The delay speed in milliseconds.
    */
@@ -19,12 +47,42 @@ public abstract class TaskRunner implements Runnable {
   /**
    * Flag used to determine if the thread is running or not.
    */
-  protected boolean running;
+  protected volatile boolean running;
 
   /**
    * Flag to determine if this thread is finished executing
    */
-  private boolean executing;
+  private volatile boolean executing;
+
+  private volatile Pacing pacing;
+
+  /**
+   * The time between the start of each frame for a fixed rate.
+   */
+  private volatile long frameInterval;
+
+  /**
+   * When the next fixed rate frame should start, restarted when the runner
+   * is played or the pacing changes.
+   */
+  private long nextFrame;
+  private volatile boolean restartClock;
+
+  /**
+   * Set when the runner is halted from a synchronization point, the rest of
+   * that frame is skipped.
+   */
+  private volatile boolean halted;
+
+  /**
+   * Counted down once this runner stops after being halted.
+   */
+  private volatile CountDownLatch parked;
+
+  /**
+   * The amount of time the last frame took in nanoseconds.
+   */
+  private volatile long frameNanos;
 
   /**
    * Flag that determines if this thread will loop continuously without being
@@ -38,9 +96,13 @@ public abstract class TaskRunner implements Runnable {
   private final AtomicInteger timeLapse;
 
   /**
-   * Barrier for this thread to wait to be signaled by another thread.
+   * Guards the number of times this runner was played, a paused runner waits
+   * on the condition to be signaled by another thread. A lock is used rather
+   * than a monitor so a paused virtual thread gives up it's carrier.
    */
-  private final CyclicBarrier waiter;
+  private final ReentrantLock lock;
+  private final Condition played;
+  private long plays;
 
   /**
    * Creates a new TaskRunner with the given delay and whether this TaskRunner
@@ -55,7 +117,10 @@ public abstract class TaskRunner implements Runnable {
     running = false;
     executing = true;
     timeLapse = new AtomicInteger(0);
-    waiter = new CyclicBarrier(2);
+    lock = new ReentrantLock();
+    played = lock.newCondition();
+    pacing = Pacing.DELAY;
+    restartClock = true;
   }
 
   /**
@@ -67,6 +132,50 @@ public abstract class TaskRunner implements Runnable {
     return timeLapse.get();
   }
 
+  /**
+   * The amount of time the most recent frame took.
+   *
+   * @return The time in nanoseconds
+   */
+  public long frameNanos() {
+    return frameNanos;
+  }
+
+  /**
+   * Changes how frames are spaced out. The delay is used by
+   * <code>Pacing.DELAY</code> and the target frame rate is used by
+   * <code>Pacing.FIXED_RATE</code>, so a rate has to be set with
+   * <code>setTargetFrameRate</code> before switching to a fixed rate.
+   *
+   * @param pacing The new pacing
+   * @throws IllegalStateException If the pacing is a fixed rate and no frame
+   * rate was set
+   */
+  public void setPacing(Pacing pacing) {
+    if (pacing == Pacing.FIXED_RATE && frameInterval == 0) {
+      throw new IllegalStateException("A fixed rate needs a target frame rate");
+    }
+    this.pacing = pacing;
+    restartClock = true;
+  }
+
+  public Pacing getPacing() {
+    return pacing;
+  }
+
+  /**
+   * Starts each frame at a fixed rate.
+   *
+   * @param framesPerSecond The number of frames to run each second
+   */
+  public void setTargetFrameRate(double framesPerSecond) {
+    if (framesPerSecond <= 0) {
+      throw new IllegalArgumentException("The frame rate must be positive");
+    }
+    frameInterval = (long) (1e9 / framesPerSecond);
+    setPacing(Pacing.FIXED_RATE);
+  }
+
   /**
    * Reset the amount of time to delay each frame
    *
@@ -87,8 +196,39 @@ public abstract class TaskRunner implements Runnable {
    * Flags the runner to start running again.
    */
   public void play() {
+    restartClock = true;
     running = true;
-    waiter.reset();
+    signal();
+  }
+
+  /**
+   * Pauses this runner from a point where every runner working together is
+   * synchronized, such as the barrier action of a shared gate. Unlike
+   * <code>pause()</code> the frame the runner is in is skipped, so the
+   * runners all stop after the same frame. The latch is counted down once
+   * the runner stops, a runner played again before then counts it down as it
+   * carries on.
+   *
+   * @param parked Counted down once this runner stops
+   */
+  public void halt(CountDownLatch parked) {
+    this.parked = parked;
+    halted = true;
+    running = false;
+  }
+
+  /**
+   * Checked by the runner after it's synchronization point, the rest of the
+   * frame should be skipped if this returns true.
+   *
+   * @return True if the runner was halted since the last call
+   */
+  protected final boolean consumeHalt() {
+    if (halted) {
+      halted = false;
+      return true;
+    }
+    return false;
   }
 
   /**
@@ -96,7 +236,56 @@ public abstract class TaskRunner implements Runnable {
    */
   public void kill() {
     executing = false;
-    waiter.reset();
+    signal();
+  }
+
+  /**
+   * Whether this runner hasn't been killed and hasn't failed.
+   *
+   * @return True if this runner still runs frames when played
+   */
+  public boolean isExecuting() {
+    return executing;
+  }
+
+  private void signal() {
+    lock.lock();
+    try {
+      plays++;
+      played.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until the runner is played again. A paused runner waits until it
+   * is running, a runner that isn't continuous waits until it's played after
+   * the given count of plays.
+   */
+  private void awaitPlay(long seen) throws InterruptedException {
+    lock.lock();
+    try {
+      CountDownLatch latch = parked;
+      if (latch != null && !halted) {
+        parked = null;
+        latch.countDown();
+      }
+      while (executing && (!running || (!continuous && plays == seen))) {
+        played.await();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private long plays() {
+    lock.lock();
+    try {
+      return plays;
+    } finally {
+      lock.unlock();
+    }
   }
 
   /**
@@ -127,24 +316,65 @@ public abstract class TaskRunner implements Runnable {
   public void run() {
     while (executing) {
       try {
+        long seen = plays();
         if (running) {
-          long start = System.currentTimeMillis();
+          long start = System.nanoTime();
           update();
-          timeLapse.getAndSet((int) (System.currentTimeMillis() - start));
+          long lapse = System.nanoTime() - start;
+          frameNanos = lapse;
+          timeLapse.getAndSet((int) (lapse / 1000000));
+          if (running) {
+            pace(start);
+          }
+        } else {
+          Thread.sleep(miliSeconds);
         }
-
-        Thread.sleep(miliSeconds);
-
-        if (!running || !continuous) {
-          waiter.await();
-        }
-      } catch (InterruptedException | BrokenBarrierException e) {
+        awaitPlay(seen);
+      } catch (InterruptedException e) {
       } catch (Exception ex) {
         System.err.println(Thread.currentThread().getName() + " failed");
         ex.printStackTrace();
         executing = false;
+        CountDownLatch latch = parked;
+        if (latch != null) {
+          latch.countDown();
+        }
       }
     }
   }
 
+  /**
+   * Waits for the next frame depending on the pacing.
+   *
+   * @param frameStart When the frame that just finished started
+   */
+  private void pace(long frameStart) throws InterruptedException {
+    switch (pacing) {
+      case DELAY:
+        Thread.sleep(miliSeconds);
+        break;
+      case FIXED_RATE:
+        if (restartClock) {
+          restartClock = false;
+          nextFrame = frameStart;
+        }
+        nextFrame += frameInterval;
+        long now = System.nanoTime();
+        if (now - nextFrame > frameInterval * MAX_CATCH_UP_FRAMES) {
+          nextFrame = now;
+        }
+        long remaining;
+        while ((remaining = nextFrame - System.nanoTime()) > 0 && executing) {
+          LockSupport.parkNanos(this, remaining);
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+        }
+        break;
+      case UNTHROTTLED:
+      default:
+        break;
+    }
+  }
+
 }
@@ -0,0 +1,77 @@
+package engine.util.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The kind of threads a surface runs it's MThreads on. Most of an MThread's
+ * life is spent parked at the waiting gate, so virtual threads allow a
+ * surface to be split into hundreds of regions without an OS thread for
+ * each one.
+ *
+ * @author Richard DeSilvey
+ */
+public enum ThreadMode {
+
+  /**
+   * A fixed pool with a platform thread for each runner.
+   */
+  PLATFORM,
+  /**
+   * A new virtual thread for each runner. Virtual threads need Java 21 or
+   * newer, older runtimes fall back to platform threads.
+   */
+  VIRTUAL;
+
+  /**
+   * Creates an executor that can run the given number of runners at the same
+   * time.
+   *
+   * @param threadCount The number of runners
+   * @return The executor for the runners
+   */
+  public ExecutorService newExecutor(int threadCount) {
+    if (this == VIRTUAL) {
+      ExecutorService virtual = newVirtualExecutor();
+      if (virtual != null) {
+        return virtual;
+      }
+    }
+    return Executors.newFixedThreadPool(threadCount);
+  }
+
+  /**
+   * Virtual threads are looked up at runtime since the project is built for
+   * Java 8.
+   *
+   * @return The executor or null if virtual threads aren't available
+   */
+  private static ExecutorService newVirtualExecutor() {
+    try {
+      Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) factory.invoke(null);
+    } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+      Logger.getLogger(ThreadMode.class.getName()).log(Level.WARNING,
+              "Virtual threads aren''t available, using platform threads: {0}", e.toString());
+      return null;
+    }
+  }
+
+  /**
+   * Whether this runtime supports virtual threads.
+   *
+   * @return True if the VIRTUAL mode uses virtual threads
+   */
+  public static boolean virtualThreadsAvailable() {
+    try {
+      Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return true;
+    } catch (NoSuchMethodException e) {
+      return false;
+    }
+  }
+
+}
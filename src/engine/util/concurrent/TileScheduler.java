@@ -0,0 +1,113 @@
+package engine.util.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs the frames of many small tiles on a ForkJoinPool instead of pinning
+ * each region of the surface to it's own thread. Each tile is an MThread that
+ * never runs on it's own, on each frame the scheduler submits every tile to
+ * the pool and idle workers steal tiles from busy ones. An expensive part of
+ * the surface is then shared between the workers instead of holding up the
+ * whole frame. The frame action runs between frames in place of the barrier
+ * action of the waiting gate, halting the scheduler from it skips the frame.
+ *
+ * @author Richard DeSilvey
+ */
+public class TileScheduler extends TaskRunner {
+
+  private static final boolean CONTINUOUS = true;
+
+  private final ForkJoinPool pool;
+  private final List<MThread> tiles;
+  private final List<Callable<Void>> frames;
+  private final List<List<Callable<Void>>> phases;
+  private final Runnable frameAction;
+
+  /**
+   * Creates a new scheduler for the given tiles.
+   *
+   * @param delay The amount of time to delay each frame in milliseconds
+   * @param tiles The tiles to run on each frame
+   * @param pool The pool the tiles are run on
+   * @param frameAction Runs before each frame while no tile is running
+   */
+  public TileScheduler(int delay, List<MThread> tiles, ForkJoinPool pool, Runnable frameAction) {
+    super(delay, CONTINUOUS);
+    this.pool = pool;
+    this.tiles = tiles;
+    this.frameAction = frameAction;
+    frames = new ArrayList<>(tiles.size());
+    tiles.forEach(tile -> {
+      frames.add(() -> {
+        tile.runFrame();
+        return null;
+      });
+    });
+    phases = new ArrayList<>();
+  }
+
+  /**
+   * Splits each frame into phases. Every tile finishes a phase before any
+   * tile starts the next one.
+   *
+   * @param phaseCount The number of phases in each frame
+   */
+  public void setPhaseCount(int phaseCount) {
+    phases.clear();
+    tiles.forEach(tile -> tile.setPhases(null, phaseCount));
+    if (phaseCount == 1) {
+      return;
+    }
+    for (int phase = 0; phase < phaseCount; phase++) {
+      int current = phase;
+      List<Callable<Void>> phaseFrames = new ArrayList<>(tiles.size());
+      tiles.forEach(tile -> {
+        phaseFrames.add(() -> {
+          tile.runPhase(current);
+          return null;
+        });
+      });
+      phases.add(phaseFrames);
+    }
+  }
+
+  @Override
+  public void update() throws Exception {
+    frameAction.run();
+    if (consumeHalt()) {
+      return;
+    }
+    if (phases.isEmpty()) {
+      invokeAll(frames);
+    } else {
+      for (List<Callable<Void>> phase : phases) {
+        invokeAll(phase);
+      }
+    }
+  }
+
+  private void invokeAll(List<Callable<Void>> work) throws Exception {
+    for (Future<Void> frame : pool.invokeAll(work)) {
+      try {
+        frame.get();
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw (cause instanceof Exception) ? (Exception) cause : e;
+      }
+    }
+  }
+
+  public List<MThread> getTiles() {
+    return tiles;
+  }
+
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+}
@@ -21,6 +21,20 @@ public final class Boundaries {
   }
 
   public Boundaries(int lowerXBound, int upperXBound, int lowerYBound, int upperYBound) {
+    set(lowerXBound, upperXBound, lowerYBound, upperYBound);
+  }
+
+  /**
+   * Moves these bounds. Every TaskManager sharing this instance will work on
+   * the new bounds, so this should only be called while no thread is working
+   * on them.
+   *
+   * @param lowerXBound The lower x bounds
+   * @param upperXBound The upper x bounds
+   * @param lowerYBound The lower y bounds
+   * @param upperYBound The upper y bounds
+   */
+  public void set(int lowerXBound, int upperXBound, int lowerYBound, int upperYBound) {
 
     if (lowerXBound < 0 || upperXBound < 0) {
       throw new IllegalArgumentException("Can't have negative bounds");
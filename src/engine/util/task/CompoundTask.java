@@ -15,8 +15,9 @@ public abstract class CompoundTask extends BasicTask {
   @Override
   public final void construct() {
     if (subTaskManager == null) {
-      Boundaries taskBounds = getThread().getManager().getBounds();
-      subTaskManager = new TaskManager(taskBounds);
+      TaskManager manager = getThread().getManager();
+      subTaskManager = new TaskManager(manager.getBounds());
+      subTaskManager.setTraversal(manager.getTraversal());
     }
     setup();
   }
@@ -0,0 +1,135 @@
+package engine.util.task;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Runs a run of fusable tasks in a single sweep over the cells. Each task
+ * that passes it's check has before() called, then the perform(x, y) bodies
+ * of those tasks run back to back on each cell, then after() is called on
+ * each of them in the order they were added. A task that performs it's bounds
+ * at once splits the sweep, the tasks before it are swept first so every cell
+ * still sees the tasks in order.
+ *
+ * @author Richard DeSilvey
+ */
+class FusedTask extends Task {
+
+  private final Task[] tasks;
+  private final Task[] active;
+  private final Task[] pending;
+  private int activeCount, pendingCount;
+
+  /**
+   * Fuses the given tasks, which all need to be fusable, in the same phase
+   * and share the same traversal.
+   *
+   * @param tasks The tasks in the order they were added
+   */
+  public FusedTask(List<Task> tasks) {
+    this.tasks = tasks.toArray(new Task[tasks.size()]);
+    active = new Task[this.tasks.length];
+    pending = new Task[this.tasks.length];
+    phase = this.tasks[0].getPhase();
+    traversal = this.tasks[0].getTraversal();
+    boolean declared = true;
+    List<int[]> reads = new ArrayList<>(), writes = new ArrayList<>();
+    for (Task task : this.tasks) {
+      declared &= task.declaresFields();
+      reads.add(task.getReads());
+      writes.add(task.getWrites());
+    }
+    if (declared) {
+      reads(union(reads));
+      writes(union(writes));
+    }
+  }
+
+  private static int[] union(List<int[]> fields) {
+    return fields.stream().flatMapToInt(IntStream::of).distinct().toArray();
+  }
+
+  /**
+   * The tasks run by this fused task.
+   *
+   * @return The tasks in the order they are performed on each cell
+   */
+  public List<Task> getTasks() {
+    return Arrays.asList(tasks);
+  }
+
+  @Override
+  public void construct() {
+    // The tasks were constructed when they were added to the manager
+  }
+
+  @Override
+  public boolean check() throws Exception {
+    activeCount = 0;
+    for (Task task : tasks) {
+      if (task.check()) {
+        active[activeCount++] = task;
+      }
+    }
+    return activeCount > 0;
+  }
+
+  @Override
+  public void before() throws Exception {
+    for (int i = 0; i < activeCount; i++) {
+      active[i].before();
+    }
+  }
+
+  @Override
+  public void perform(int x, int y) throws Exception {
+    for (int i = 0; i < activeCount; i++) {
+      active[i].perform(x, y);
+    }
+  }
+
+  /**
+   * Sweeps the active tasks over the bounds. Runs of per cell tasks share a
+   * traversal, tasks that perform their bounds at once run between them.
+   *
+   * @param bounds The region being swept
+   * @param traversal The order the cells are visited in
+   * @throws Exception Any exception thrown by a task
+   */
+  void sweep(Boundaries bounds, Traversal traversal) throws Exception {
+    pendingCount = 0;
+    for (int i = 0; i < activeCount; i++) {
+      Task task = active[i];
+      if (task.performsBounds()) {
+        sweepPending(bounds, traversal);
+        task.performBounds(bounds);
+      } else {
+        pending[pendingCount++] = task;
+      }
+    }
+    sweepPending(bounds, traversal);
+  }
+
+  private void sweepPending(Boundaries bounds, Traversal traversal) throws Exception {
+    if (pendingCount == 1) {
+      traversal.traverse(bounds, pending[0]::perform);
+    } else if (pendingCount > 1) {
+      traversal.traverse(bounds, (x, y) -> {
+        for (int i = 0; i < pendingCount; i++) {
+          pending[i].perform(x, y);
+        }
+      });
+    }
+    pendingCount = 0;
+  }
+
+  @Override
+  public void after() throws Exception {
+    for (int i = 0; i < activeCount; i++) {
+      active[i].after();
+    }
+  }
+
+}
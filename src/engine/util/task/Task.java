@@ -22,6 +22,57 @@ public abstract class Task {
    */
   protected boolean singleTask = false;
 
+  /**
+   * The phase of the frame this task runs in. Every thread finishes the tasks
+   * of a phase before any thread starts the next phase, so a task can read
+   * anything written by another thread in an earlier phase. By default every
+   * task is in the first phase.
+   */
+  protected int phase = 0;
+
+  /**
+   * The number of colors the cells are split into for in-place stencils. The
+   * cells of each color are performed in their own pass and every thread
+   * finishes a pass before any thread starts the next, so a cell never reads
+   * a neighbor that is being updated at the same time. Two colors are a
+   * red-black checkerboard, enough for stencils reading the four adjacent
+   * cells. Four colors alternate in both directions, enough for stencils
+   * reading all eight neighbors. By default every cell is in one pass. A
+   * surface running as tiles on a pool rejects tasks with more than one
+   * color. Since the threads meet between passes, a task with more than one
+   * color has to be added to every thread of the surface, through
+   * addTaskToThreads or produceTasks, or the threads that have it wait
+   * forever for the ones that don't.
+   */
+  protected int colors = 1;
+
+  /**
+   * Marks this task as safe to run in the same sweep as the fusable tasks
+   * added right before or after it. A fused task's perform(x, y) runs on a
+   * cell right after the one before it instead of after the one before it
+   * finishes every cell, so a fusable task should only read the neighbors of
+   * a cell from a buffer, such as a HaloField, and not from cells another
+   * task in the same sweep writes. The before() of every task in a sweep is
+   * called before any cell is performed. By default tasks aren't fusable.
+   */
+  protected boolean fusable = false;
+
+  /**
+   * The order this task visits the cells of it's region in, null to use the
+   * traversal of the manager running it. The manager's traversal matches the
+   * layout of the surface which suits tasks that only touch their own cell,
+   * a stencil task reading it's neighbors may do better along a tile or a
+   * Hilbert curve.
+   */
+  protected Traversal traversal;
+
+  /**
+   * The ids of the fields this task reads and writes, null if the task never
+   * declared them. A task that doesn't declare it's fields is assumed to
+   * touch every field.
+   */
+  private int[] reads, writes;
+
   public void setThread(MThread thread) {
     parentThread = thread;
   }
@@ -37,6 +88,120 @@ public abstract class Task {
   public boolean isSingleTask() {
     return singleTask;
   }
+
+  public int getPhase() {
+    return phase;
+  }
+
+  public int getColors() {
+    return colors;
+  }
+
+  public Traversal getTraversal() {
+    return traversal;
+  }
+
+  public boolean isFusable() {
+    return fusable && colors == 1;
+  }
+
+  /**
+   * The color of a cell when the cells are split into the given number of
+   * colors.
+   *
+   * @param x The x coordinate of the cell
+   * @param y The y coordinate of the cell
+   * @param colors One, two or four colors
+   * @return The pass the cell is performed in
+   */
+  public static int colorOf(int x, int y, int colors) {
+    switch (colors) {
+      case 1:
+        return 0;
+      case 2:
+        return (x + y) & 1;
+      case 4:
+        return (x & 1) | ((y & 1) << 1);
+      default:
+        throw new IllegalArgumentException("Cells can only be split into 1, 2 or 4 colors");
+    }
+  }
+
+  /**
+   * Declares the fields this task reads. Tasks that declare their fields can
+   * run at the same time as other tasks they don't conflict with.
+   *
+   * @param fields The ids of the fields this task reads
+   * @see TaskGraph
+   */
+  protected final void reads(int... fields) {
+    reads = fields.clone();
+    if (writes == null) {
+      writes = new int[0];
+    }
+  }
+
+  /**
+   * Declares the fields this task writes.
+   *
+   * @param fields The ids of the fields this task writes
+   * @see #reads(int...)
+   */
+  protected final void writes(int... fields) {
+    writes = fields.clone();
+    if (reads == null) {
+      reads = new int[0];
+    }
+  }
+
+  int[] getReads() {
+    return reads == null ? new int[0] : reads;
+  }
+
+  int[] getWrites() {
+    return writes == null ? new int[0] : writes;
+  }
+
+  /**
+   * Checks if this task declared the fields it reads and writes.
+   *
+   * @return False if this task is assumed to touch every field
+   */
+  public boolean declaresFields() {
+    return reads != null;
+  }
+
+  /**
+   * Checks if this task and another task need to run one after the other.
+   * Two tasks conflict if either one writes a field the other reads or
+   * writes, if either one doesn't declare it's fields or if either one is
+   * split into colors.
+   *
+   * @param other The other task
+   * @return True if the tasks can't run at the same time
+   */
+  public boolean conflictsWith(Task other) {
+    if (!declaresFields() || !other.declaresFields()) {
+      return true;
+    }
+    // Color passes wait on the other threads, they don't share a level
+    if (colors > 1 || other.colors > 1) {
+      return true;
+    }
+    return overlaps(writes, other.reads) || overlaps(writes, other.writes)
+            || overlaps(reads, other.writes);
+  }
+
+  private static boolean overlaps(int[] fields, int[] others) {
+    for (int field : fields) {
+      for (int other : others) {
+        if (field == other) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
   
   /**
    * This method is called when a task is added to a TaskManager. This method is
@@ -73,6 +238,31 @@ public abstract class Task {
    */
   public abstract void perform(int x, int y) throws Exception;
 
+  /**
+   * Whether this frame the task performs it's whole region in a single call
+   * to <code>performBounds(bounds)</code> instead of once per cell. Checked
+   * after <code>before()</code> so a task can switch between the two at
+   * runtime. A fused sweep is split around a task that performs it's bounds,
+   * so while this returns true the task isn't fused with it's neighbors.
+   *
+   * @return True if <code>performBounds(bounds)</code> should be called
+   */
+  public boolean performsBounds() {
+    return false;
+  }
+
+  /**
+   * Performs every cell inside of the bounds at once, used by tasks that work
+   * directly on the field columns. The manager only calls this when
+   * <code>performsBounds()</code> returns true. By default each cell is
+   * performed on it's own in row-major order.
+   *
+   * @param bounds The region of the thread running this task
+   */
+  public void performBounds(Boundaries bounds) throws Exception {
+    Traversal.ROW_MAJOR.traverse(bounds, this::perform);
+  }
+
   /**
    * An optional after-processing method called after all calls to perform(x, y)
    * or the single call to perform() finishes.
@@ -0,0 +1,57 @@
+package engine.util.task;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Orders a list of tasks into levels using the fields each task reads and
+ * writes. A task depends on every earlier task it conflicts with and is
+ * placed in the level after the last of them, so the tasks in a level don't
+ * conflict with each other and can run at the same time. Tasks that conflict
+ * still run in the order they were added.
+ *
+ * @author Richard DeSilvey
+ */
+public class TaskGraph {
+
+  private final List<List<Task>> levels;
+
+  /**
+   * Builds the levels of the given tasks.
+   *
+   * @param tasks The tasks in the order they were added
+   */
+  public TaskGraph(List<Task> tasks) {
+    levels = new ArrayList<>();
+    int[] taskLevels = new int[tasks.size()];
+    for (int i = 0; i < tasks.size(); i++) {
+      Task task = tasks.get(i);
+      int level = 0;
+      for (int j = 0; j < i; j++) {
+        if (taskLevels[j] >= level && tasks.get(j).conflictsWith(task)) {
+          level = taskLevels[j] + 1;
+        }
+      }
+      taskLevels[i] = level;
+      if (level == levels.size()) {
+        levels.add(new ArrayList<>());
+      }
+      levels.get(level).add(task);
+    }
+  }
+
+  /**
+   * The levels of this graph, each level runs after the one before it.
+   *
+   * @return The tasks of each level
+   */
+  public List<List<Task>> getLevels() {
+    return Collections.unmodifiableList(levels);
+  }
+
+  public int getLevelCount() {
+    return levels.size();
+  }
+
+}
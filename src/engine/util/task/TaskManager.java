@@ -2,6 +2,10 @@ package engine.util.task;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  *
@@ -11,10 +15,36 @@ public class TaskManager {
 
   private final List<Task> tasks;
   protected Boundaries bounds;
+  private Traversal traversal;
+  /**
+   * When true the tasks that don't conflict run at the same time on the fork
+   * join pool, otherwise every task runs in the order it was added.
+   */
+  private boolean concurrent;
+  /**
+   * Counts each time a task is added or removed. Tasks can be added from any
+   * thread while the manager's thread performs them, the schedule is rebuilt
+   * by the manager's thread once it sees the count change.
+   */
+  private final AtomicLong version;
+  private volatile Schedule schedule;
+  private Gate colorGate;
+  private boolean rejectColors;
+
+  /**
+   * Waits for every other thread working on the same surface.
+   */
+  public interface Gate {
+
+    void await() throws Exception;
+  }
 
   public TaskManager(Boundaries bounds) {
-    tasks = new ArrayList<>();
+    // Tasks can be added while the thread is running
+    tasks = new CopyOnWriteArrayList<>();
+    version = new AtomicLong();
     this.bounds = bounds;
+    traversal = Traversal.ROW_MAJOR;
   }
 
   /**
@@ -23,35 +53,316 @@ public class TaskManager {
    * @param task The task being added to this manager.
    */
   public void addTask(Task task) {
+    if (rejectColors && task.getColors() > 1) {
+      throw new IllegalArgumentException("A task with more than one color "
+              + "can't run here, it's passes wouldn't be in step with the "
+              + "neighboring regions");
+    }
     task.construct();
     tasks.add(task);
+    version.incrementAndGet();
   }
 
   public Boundaries getBounds() {
     return bounds;
   }
 
-  public void performTasks() throws Exception {
-    int lowerYBound = bounds.getLowerYBound();
-    int upperYBound = bounds.getUpperYBound();
-    int lowerXBound = bounds.getLowerXBound();
-    int upperXBound = bounds.getUpperXBound();
+  public Traversal getTraversal() {
+    return traversal;
+  }
+
+  /**
+   * Sets the order each cell is visited when performing tasks. By default
+   * cells are visited in row-major order.
+   *
+   * @param traversal The order to visit cells in
+   */
+  public void setTraversal(Traversal traversal) {
+    this.traversal = traversal;
+  }
+
+  /**
+   * Sets the gate every thread meets at between the color passes of a task.
+   * Without a gate the passes are only ordered inside of this manager's
+   * bounds. Every manager sharing the gate needs the same colored tasks,
+   * otherwise the managers with a colored task wait at the gate for managers
+   * that never reach it.
+   *
+   * @param colorGate The gate shared by the managers of every thread
+   * @see Task#getColors()
+   */
+  public void setColorGate(Gate colorGate) {
+    this.colorGate = colorGate;
+  }
+
+  /**
+   * Stops this manager from accepting tasks with more than one color. Used
+   * for managers that can't meet their neighbors between passes, such as the
+   * tiles of a TileScheduler, where a red pass in one region would run at the
+   * same time as a black pass next to it.
+   */
+  public void rejectColoredTasks() {
+    rejectColors = true;
+  }
+
+  /**
+   * Lets tasks that declare the fields they read and write run at the same
+   * time as the tasks they don't conflict with. Each level of the task graph
+   * is run on the fork join pool and finishes before the next level starts.
+   *
+   * @param concurrent True to run independent tasks at the same time
+   * @see TaskGraph
+   */
+  public void setConcurrent(boolean concurrent) {
+    this.concurrent = concurrent;
+  }
+
+  public boolean isConcurrent() {
+    return concurrent;
+  }
+
+  /**
+   * The graph of the tasks in this manager, rebuilt when tasks are added or
+   * removed.
+   *
+   * @return The task graph
+   */
+  public TaskGraph getGraph() {
+    Schedule current = getSchedule();
+    TaskGraph graph = current.graph;
+    if (graph == null) {
+      graph = new TaskGraph(current.units);
+      current.graph = graph;
+    }
+    return graph;
+  }
+
+  /**
+   * The tasks as they are performed. Each run of fusable tasks added one
+   * after the other in the same phase and with the same traversal is performed
+   * as a single task that sweeps the cells once.
+   *
+   * @return The tasks and fused tasks in the order they run
+   */
+  public List<Task> getUnits() {
+    return getSchedule().units;
+  }
+
+  /**
+   * The schedule for the current tasks. The version is read before the tasks
+   * are copied, so a task added during the copy bumps the version past the
+   * one the schedule is built for and the next call builds it again.
+   */
+  private Schedule getSchedule() {
+    Schedule current = schedule;
+    long seen = version.get();
+    if (current == null || current.version != seen) {
+      current = new Schedule(seen, fuse(new ArrayList<>(tasks)));
+      schedule = current;
+    }
+    return current;
+  }
 
+  private static List<Task> fuse(List<Task> tasks) {
+    List<Task> fused = new ArrayList<>(tasks.size());
+    List<Task> run = new ArrayList<>();
     for (Task task : tasks) {
-      if (task.check()) {
-        task.before();
+      if (!run.isEmpty() && (!task.isFusable() || !fusesWith(task, run.get(0)))) {
+        fused.add(run.size() == 1 ? run.get(0) : new FusedTask(run));
+        run.clear();
+      }
+      if (task.isFusable()) {
+        run.add(task);
+      } else {
+        fused.add(task);
+      }
+    }
+    if (!run.isEmpty()) {
+      fused.add(run.size() == 1 ? run.get(0) : new FusedTask(run));
+    }
+    return fused;
+  }
+
+  private static boolean fusesWith(Task task, Task first) {
+    return task.getPhase() == first.getPhase() && task.getTraversal() == first.getTraversal();
+  }
+
+  /**
+   * The order the given task visits it's cells in.
+   */
+  private Traversal traversalOf(Task task) {
+    Traversal own = task.getTraversal();
+    return own == null ? traversal : own;
+  }
 
-        for (int x = lowerXBound; x < upperXBound; x++) {
-          for (int y = lowerYBound; y < upperYBound; y++){
-            task.perform(x, y);
-          }
+  public void performTasks() throws Exception {
+    if (!concurrent) {
+      for (Task task : getUnits()) {
+        performTask(task);
+      }
+      return;
+    }
+    for (List<Task> level : getGraph().getLevels()) {
+      performLevel(level);
+    }
+  }
+
+  /**
+   * Performs only the tasks in the given phase. Tasks with a phase past the
+   * last phase are performed in the last phase.
+   *
+   * @param phase The phase being performed
+   * @param lastPhase The last phase of the frame
+   * @throws Exception Any exception thrown by a task
+   */
+  public void performTasks(int phase, int lastPhase) throws Exception {
+    if (!concurrent) {
+      for (Task task : getUnits()) {
+        if (inPhase(task, phase, lastPhase)) {
+          performTask(task);
+        }
+      }
+      return;
+    }
+    List<Task> phaseLevel = new ArrayList<>();
+    for (List<Task> level : getGraph().getLevels()) {
+      phaseLevel.clear();
+      for (Task task : level) {
+        if (inPhase(task, phase, lastPhase)) {
+          phaseLevel.add(task);
         }
-        task.after();
+      }
+      performLevel(phaseLevel);
+    }
+  }
+
+  private static boolean inPhase(Task task, int phase, int lastPhase) {
+    return Math.min(task.getPhase(), lastPhase) == phase;
+  }
+
+  private void performLevel(List<Task> level) throws Exception {
+    if (level.size() < 2) {
+      for (Task task : level) {
+        performTask(task);
+      }
+      return;
+    }
+    List<TaskAction> actions = new ArrayList<>(level.size());
+    level.forEach(task -> actions.add(new TaskAction(task)));
+    ForkJoinTask.invokeAll(actions);
+    for (TaskAction action : actions) {
+      if (action.failure != null) {
+        throw action.failure;
+      }
+    }
+  }
+
+  private void performTask(Task task) throws Exception {
+    if (task.getColors() > 1) {
+      performColors(task);
+    } else if (task.check()) {
+      task.before();
+      if (task instanceof FusedTask) {
+        ((FusedTask) task).sweep(bounds, traversalOf(task));
+      } else if (task.performsBounds()) {
+        task.performBounds(bounds);
+      } else {
+        traversalOf(task).traverse(bounds, task::perform);
+      }
+      task.after();
+    }
+  }
+
+  /**
+   * Performs the cells of each color in their own pass. A manager whose task
+   * skips this frame still meets the other threads between the passes so the
+   * threads stay in step. Each pass steps over every other cell of each row,
+   * so the passes together visit each cell once instead of sweeping the
+   * region once per color. The cells are visited row by row whatever the
+   * traversal.
+   */
+  private void performColors(Task task) throws Exception {
+    int colors = task.getColors();
+    boolean checked = task.check();
+    if (checked) {
+      task.before();
+    }
+    for (int color = 0; color < colors; color++) {
+      if (color > 0 && colorGate != null) {
+        colorGate.await();
+      }
+      if (checked) {
+        performColor(task, colors, color);
+      }
+    }
+    if (checked) {
+      task.after();
+    }
+  }
+
+  /**
+   * Performs the cells of one color. Along a row the colors of the cells
+   * repeat every two cells, rows without the color are skipped.
+   */
+  private void performColor(Task task, int colors, int color) throws Exception {
+    int upperX = bounds.getUpperXBound();
+    for (int y = bounds.getLowerYBound(); y < bounds.getUpperYBound(); y++) {
+      int x = bounds.getLowerXBound();
+      if (Task.colorOf(x, y, colors) != color) {
+        x++;
+      }
+      if (x >= upperX || Task.colorOf(x, y, colors) != color) {
+        continue;
+      }
+      for (; x < upperX; x += 2) {
+        task.perform(x, y);
       }
     }
   }
 
   public void trimTasks() {
-    tasks.removeIf(task -> task.isSingleTask());
+    if (tasks.removeIf(task -> task.isSingleTask())) {
+      version.incrementAndGet();
+    }
+  }
+
+  /**
+   * The tasks with each run of fusable tasks fused into one and the graph of
+   * those tasks, built for a single version of the task list.
+   */
+  private static class Schedule {
+
+    private final long version;
+    private final List<Task> units;
+    private volatile TaskGraph graph;
+
+    Schedule(long version, List<Task> units) {
+      this.version = version;
+      this.units = units;
+    }
+  }
+
+  /**
+   * Performs a task of a level on the fork join pool.
+   */
+  private class TaskAction extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Task task;
+    private Exception failure;
+
+    public TaskAction(Task task) {
+      this.task = task;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        performTask(task);
+      } catch (Exception e) {
+        failure = e;
+      }
+    }
   }
 }
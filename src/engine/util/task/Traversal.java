@@ -0,0 +1,163 @@
+package engine.util.task;
+
+/**
+ * A Traversal decides the order that the cells inside of a region are visited
+ * by a TaskManager. The order should match the way cells are laid out in
+ * memory so that each thread walks memory sequentially.
+ *
+ * @author Richard DeSilvey
+ */
+public abstract class Traversal {
+
+  /**
+   * Visits each cell in a region.
+   */
+  public interface CellVisitor {
+
+    void visit(int x, int y) throws Exception;
+  }
+
+  /**
+   * Visits each row from top to bottom, each row from left to right. This
+   * matches the row-major index calculated by a SurfaceMap.
+   */
+  public static final Traversal ROW_MAJOR = new RowMajor();
+
+  /**
+   * Visits the region along a Hilbert curve, each cell visited is next to the
+   * one before it. The region is covered by squares as wide as the largest
+   * power of two that fits it's shorter side and each square is walked as a
+   * curve. Neighbors of a cell tend to have been visited recently which suits
+   * stencil tasks that read the cells around them, though working out each
+   * point of the curve costs more than walking rows. Measure a task with the
+   * TraversalBenchmark before switching it to this order.
+   */
+  public static final Traversal HILBERT = new Hilbert();
+
+  /**
+   * Creates a traversal that visits the region one square tile at a time. The
+   * tiles are aligned to multiples of the tile size on the whole surface so
+   * that they line up with a SurfaceMap using a tiled layout of the same size.
+   *
+   * @param tileSize The width of a tile in cells
+   * @return The tiled traversal
+   */
+  public static Traversal tiled(int tileSize) {
+    return new Tiled(tileSize);
+  }
+
+  /**
+   * Visits every cell inside of the bounds. The upper bounds are exclusive.
+   *
+   * @param bounds The region being visited
+   * @param visitor Called for each cell
+   * @throws Exception Any exception thrown by the visitor
+   */
+  public abstract void traverse(Boundaries bounds, CellVisitor visitor) throws Exception;
+
+  private static final class RowMajor extends Traversal {
+
+    @Override
+    public void traverse(Boundaries bounds, CellVisitor visitor) throws Exception {
+      int lowerXBound = bounds.getLowerXBound();
+      int upperXBound = bounds.getUpperXBound();
+      int upperYBound = bounds.getUpperYBound();
+      for (int y = bounds.getLowerYBound(); y < upperYBound; y++) {
+        for (int x = lowerXBound; x < upperXBound; x++) {
+          visitor.visit(x, y);
+        }
+      }
+    }
+  }
+
+  private static final class Hilbert extends Traversal {
+
+    @Override
+    public void traverse(Boundaries bounds, CellVisitor visitor) throws Exception {
+      int lowerXBound = bounds.getLowerXBound();
+      int upperXBound = bounds.getUpperXBound();
+      int lowerYBound = bounds.getLowerYBound();
+      int upperYBound = bounds.getUpperYBound();
+      int side = Math.min(upperXBound - lowerXBound, upperYBound - lowerYBound);
+      if (side < 1) {
+        return;
+      }
+      int size = Integer.highestOneBit(side);
+      int cells = size * size;
+
+      for (int squareY = lowerYBound; squareY < upperYBound; squareY += size) {
+        for (int squareX = lowerXBound; squareX < upperXBound; squareX += size) {
+          for (int d = 0; d < cells; d++) {
+            int point = toPoint(d, size);
+            int x = squareX + (point & 0xFFFF), y = squareY + (point >>> 16);
+            if (x < upperXBound && y < upperYBound) {
+              visitor.visit(x, y);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Converts a distance along the curve to a point in a square of the given
+     * width, packed as (y << 16) | x.
+     */
+    private static int toPoint(int d, int size) {
+      int x = 0, y = 0;
+      for (int s = 1; s < size; s <<= 1) {
+        int rx = 1 & (d >>> 1);
+        int ry = 1 & (d ^ rx);
+        if (ry == 0) {
+          if (rx == 1) {
+            x = s - 1 - x;
+            y = s - 1 - y;
+          }
+          int swap = x;
+          x = y;
+          y = swap;
+        }
+        x += s * rx;
+        y += s * ry;
+        d >>>= 2;
+      }
+      return (y << 16) | x;
+    }
+  }
+
+  private static final class Tiled extends Traversal {
+
+    private final int tileSize;
+
+    public Tiled(int tileSize) {
+      if (tileSize < 1) {
+        throw new IllegalArgumentException("The tile size must be positive");
+      }
+      this.tileSize = tileSize;
+    }
+
+    @Override
+    public void traverse(Boundaries bounds, CellVisitor visitor) throws Exception {
+      int lowerXBound = bounds.getLowerXBound();
+      int upperXBound = bounds.getUpperXBound();
+      int lowerYBound = bounds.getLowerYBound();
+      int upperYBound = bounds.getUpperYBound();
+      int startX = lowerXBound - (lowerXBound % tileSize);
+      int startY = lowerYBound - (lowerYBound % tileSize);
+
+      for (int tileY = startY; tileY < upperYBound; tileY += tileSize) {
+        int fromY = Math.max(tileY, lowerYBound);
+        int toY = Math.min(tileY + tileSize, upperYBound);
+        for (int tileX = startX; tileX < upperXBound; tileX += tileSize) {
+          int fromX = Math.max(tileX, lowerXBound);
+          int toX = Math.min(tileX + tileSize, upperXBound);
+          for (int y = fromY; y < toY; y++) {
+            for (int x = fromX; x < toX; x++) {
+              visitor.visit(x, y);
+            }
+          }
+        }
+      }
+    }
+  }
+
+}
@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.List;
 import worlds.planet.PlanetCell;
 import worlds.planet.Surface;
+import worlds.planet.geosphere.GeoCell;
 
 public class MinMaxHeightFactory implements TaskFactory {
 
@@ -54,6 +55,14 @@ public class MinMaxHeightFactory implements TaskFactory {
 
   private class MinMaxHeightTask extends Task {
 
+    public MinMaxHeightTask() {
+      // The height is recalculated from the mantle in the geological timescale
+      reads(GeoCell.TOTAL_VOLUME, GeoCell.TOTAL_MASS, GeoCell.AMOUNT_SUBMERGED,
+              GeoCell.MANTLE_TEMPERATURE);
+      writes(GeoCell.AMOUNT_SUBMERGED);
+      fusable = true;
+    }
+
     private Delay delayTask;
     private float absLowestHeight, absHighestHeight;
     private AtomicFloat absLowest, absHighest;
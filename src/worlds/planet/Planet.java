@@ -3,6 +3,8 @@ package worlds.planet;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import engine.surface.ArrayFieldStore;
+import engine.surface.FieldStoreFactory;
 import engine.surface.SurfaceMap;
 
 /**
@@ -12,18 +14,13 @@ import engine.surface.SurfaceMap;
  */
 public abstract class Planet {
 
-  protected TimeScale timescale;
-  private static Planet current;
+  private final PlanetContext context;
   private final PlanetSurface planetSurface;
 
   public static enum TimeScale {
     Geological, Evolutionary, Civilization, None
   }
 
-  static {
-    current = null;
-  }
-
   /**
    * Constructs a new Planet.
    *
@@ -33,12 +30,43 @@ public abstract class Planet {
    * @param threadCount The number of threadReferences that work on the map
    */
   public Planet(int totalSize, int cellLength, int surfaceThreadsDelay, int threadCount) {
+    this(totalSize, cellLength, surfaceThreadsDelay, threadCount, ArrayFieldStore::new);
+  }
+
+  /**
+   * Constructs a new Planet where the state of each cell is kept in a
+   * FieldStore built by the given factory. Use a MappedFieldStore to keep the
+   * state of large surfaces outside of the heap.
+   *
+   * @param totalSize The number of cells of one side of the surface (width) + 1
+   * @param cellLength The length of one side of a cell in meters.
+   * @param surfaceThreadsDelay How fast does the planet thread(s) update
+   * @param threadCount The number of threadReferences that work on the map
+   * @param storeFactory Creates the backend for the cell state
+   */
+  public Planet(int totalSize, int cellLength, int surfaceThreadsDelay, int threadCount,
+          FieldStoreFactory storeFactory) {
+    this(new PlanetContext(cellLength), totalSize, surfaceThreadsDelay, threadCount, storeFactory);
+  }
+
+  /**
+   * Constructs a new Planet with the given context. Planets with their own
+   * contexts don't share any state and can run in the same process. If the
+   * context has a worker pool the surface runs as tiles on that pool and the
+   * thread count is ignored, if the context has a thread count of it's own
+   * that is used instead.
+   *
+   * @param context The state of this planet
+   * @param totalSize The number of cells of one side of the surface (width) + 1
+   * @param surfaceThreadsDelay How fast does the planet thread(s) update
+   * @param threadCount The number of threadReferences that work on the map
+   * @param storeFactory Creates the backend for the cell state
+   */
+  public Planet(PlanetContext context, int totalSize, int surfaceThreadsDelay, int threadCount,
+          FieldStoreFactory storeFactory) {
     Logger.getLogger(SurfaceMap.class.getName()).log(Level.INFO, "New Planet");
-    current = this;
-    PlanetCell.area = cellLength * cellLength;
-    PlanetCell.length = cellLength;
-    timescale = TimeScale.None;
-    planetSurface = new PlanetSurface(totalSize, surfaceThreadsDelay, threadCount);
+    this.context = context;
+    planetSurface = new PlanetSurface(context, totalSize, surfaceThreadsDelay, threadCount, storeFactory);
   }
 
   protected final void startThreads() {
@@ -53,6 +81,28 @@ public abstract class Planet {
     planetSurface.pauseThreads();
   }
 
+  /**
+   * Runs the surface through exactly the given number of frames as fast as
+   * it can and returns once they finish. The planet is paused afterwards.
+   *
+   * @param frames The number of frames to run
+   * @throws InterruptedException If interrupted while waiting for the frames
+   */
+  public final void step(int frames) throws InterruptedException {
+    planetSurface.step(frames);
+  }
+
+  /**
+   * Runs the surface as fast as it can until the planet reaches the given
+   * age, then pauses the planet.
+   *
+   * @param age The age of the planet in years
+   * @throws InterruptedException If interrupted while waiting for the frames
+   */
+  public final void runUntil(long age) throws InterruptedException {
+    planetSurface.runUntil(age);
+  }
+
   public final void shutdown() {
     planetSurface.killAllThreads();
   }
@@ -61,25 +111,20 @@ public abstract class Planet {
     return planetSurface;
   }
 
-  /**
-   * References the most recent instantiated instance of this class.
-   *
-   * @return A reference to the current Planet
-   */
-  public final static Planet instance() {
-    return current;
+  public PlanetContext getContext() {
+    return context;
   }
 
   public boolean isTimeScale(TimeScale scale) {
-    return scale == timescale;
+    return scale == context.getTimeScale();
   }
 
   public final TimeScale getTimeScale() {
-    return timescale;
+    return context.getTimeScale();
   }
 
   public void setTimescale(TimeScale timescale) {
-    this.timescale = timescale;
+    context.setTimeScale(timescale);
   }
   
 }
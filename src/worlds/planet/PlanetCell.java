@@ -1,6 +1,6 @@
 package worlds.planet;
 
-import java.util.List;
+import engine.surface.FieldStore;
 import worlds.planet.geosphere.GeoCell;
 
 /**
@@ -9,13 +9,6 @@ import worlds.planet.geosphere.GeoCell;
  */
 public class PlanetCell extends GeoCell {
 
-  public static int area, length;
-
-  static {
-    length = 1;
-    area = 1;
-  }
-
   public PlanetCell() {
     this(0, 0);
   }
@@ -24,4 +17,12 @@ public class PlanetCell extends GeoCell {
     super(x, y);
   }
 
+  public PlanetCell(int x, int y, FieldStore fields, int index) {
+    super(x, y, fields, index);
+  }
+
+  public PlanetCell(int x, int y, FieldStore fields, int index, PlanetContext context) {
+    super(x, y, fields, index, context);
+  }
+
 }
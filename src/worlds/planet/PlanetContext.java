@@ -0,0 +1,261 @@
+package worlds.planet;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+import worlds.planet.Planet.TimeScale;
+
+/**
+ * The state shared by everything on a single planet: the size of it's cells,
+ * it's age, how fast it ages and which of it's systems are turned off. Each
+ * planet has it's own context so several planets can run in the same process
+ * without sharing any state. A context can also name a fork join pool to run
+ * the surface on as tiles, which lets many planets share a bounded number of
+ * workers.
+ *
+ * @author Richard DeSilvey
+ */
+public class PlanetContext {
+
+  /**
+   * The number of years that pass each frame by default.
+   */
+  public static final long DEFAULT_TIME_STEP = 7125000;
+
+  private final int cellLength;
+  private final long cellArea;
+  private final AtomicLong planetAge;
+  private final ForkJoinPool workerPool;
+  private final int tileSize;
+  private volatile long timeStep, geoUpdate;
+  private volatile TimeScale timescale;
+  private volatile boolean arrayKernels;
+  private volatile int layoutTileSize;
+  private volatile int threadCount;
+  private volatile boolean suppressMantleHeating, suppressAtmosphere;
+
+  /**
+   * Creates a context for a cell that isn't part of a planet, each cell is one
+   * meter across.
+   */
+  public PlanetContext() {
+    this(1);
+  }
+
+  /**
+   * Creates a context for a planet that runs the surface on it's own threads.
+   *
+   * @param cellLength The length of one side of a cell in meters
+   */
+  public PlanetContext(int cellLength) {
+    this(cellLength, null, 0);
+  }
+
+  /**
+   * Creates a context for a planet that runs it's surface as tiles on the
+   * given pool. The pool can be shared with other planets.
+   *
+   * @param cellLength The length of one side of a cell in meters
+   * @param workerPool The pool the tiles run on, null for the planet to use
+   * it's own threads
+   * @param tileSize The width of each tile
+   */
+  public PlanetContext(int cellLength, ForkJoinPool workerPool, int tileSize) {
+    if (workerPool != null && tileSize < 1) {
+      throw new IllegalArgumentException("The tile size must be positive");
+    }
+    this.cellLength = cellLength;
+    cellArea = (long) cellLength * cellLength;
+    this.workerPool = workerPool;
+    this.tileSize = tileSize;
+    planetAge = new AtomicLong(0);
+    timeStep = DEFAULT_TIME_STEP;
+    timescale = TimeScale.None;
+    arrayKernels = !Boolean.getBoolean("planet.scalarTasks");
+  }
+
+  /**
+   * The length of one side of a cell.
+   *
+   * @return The length in meters
+   */
+  public int getCellLength() {
+    return cellLength;
+  }
+
+  /**
+   * The area of a cell.
+   *
+   * @return The area in square meters
+   */
+  public long getCellArea() {
+    return cellArea;
+  }
+
+  /**
+   * The age of the planet.
+   *
+   * @return The age in years
+   */
+  public long getPlanetAge() {
+    return planetAge.get();
+  }
+
+  /**
+   * Ages the planet by one time step.
+   *
+   * @return The age of the planet before the step
+   */
+  public long advanceAge() {
+    return planetAge.getAndAdd(timeStep);
+  }
+
+  public void resetAge() {
+    planetAge.set(0);
+  }
+
+  /**
+   * The number of years that pass for each frame of the surface.
+   *
+   * @return The time step in years
+   */
+  public long getTimeStep() {
+    return timeStep;
+  }
+
+  public void setTimeStep(long timeStep) {
+    this.timeStep = timeStep;
+  }
+
+  /**
+   * The number of years that pass for each step of erosion.
+   *
+   * @return The time between geological updates in years
+   */
+  public long getGeoUpdate() {
+    return geoUpdate;
+  }
+
+  public void setGeoUpdate(long geoUpdate) {
+    this.geoUpdate = geoUpdate;
+  }
+
+  public TimeScale getTimeScale() {
+    return timescale;
+  }
+
+  public void setTimeScale(TimeScale timescale) {
+    this.timescale = timescale;
+  }
+
+  /**
+   * Whether tasks that have a kernel over the field columns use it instead of
+   * updating one cell at a time. On by default, running with
+   * -Dplanet.scalarTasks=true turns it off for every new context.
+   *
+   * @return True if the array kernels are used
+   */
+  public boolean useArrayKernels() {
+    return arrayKernels;
+  }
+
+  /**
+   * Switches between the array kernels and the per cell tasks. Takes effect
+   * on the next frame.
+   *
+   * @param arrayKernels True to use the array kernels
+   */
+  public void setArrayKernels(boolean arrayKernels) {
+    this.arrayKernels = arrayKernels;
+  }
+
+  public boolean isMantleHeatingSuppressed() {
+    return suppressMantleHeating;
+  }
+
+  /**
+   * Turns the heating of the mantle on this planet off or back on.
+   *
+   * @param suppressMantleHeating True to stop heating the mantle
+   */
+  public void setSuppressMantleHeating(boolean suppressMantleHeating) {
+    this.suppressMantleHeating = suppressMantleHeating;
+  }
+
+  public boolean isAtmosphereSuppressed() {
+    return suppressAtmosphere;
+  }
+
+  /**
+   * Turns the atmosphere of this planet off or back on.
+   *
+   * @param suppressAtmosphere True to run the planet without an atmosphere
+   */
+  public void setSuppressAtmosphere(boolean suppressAtmosphere) {
+    this.suppressAtmosphere = suppressAtmosphere;
+  }
+
+  /**
+   * The width of the square tiles the cells of the surface are laid out in.
+   *
+   * @return The tile width, zero for the row-major layout
+   */
+  public int getLayoutTileSize() {
+    return layoutTileSize;
+  }
+
+  /**
+   * Lays the cells of the surface out in memory as square tiles instead of
+   * rows. This needs to be set before the planet is created, the surface
+   * applies it before it builds it's map.
+   *
+   * @param layoutTileSize The width of a tile, must be a power of 2. Zero
+   * keeps the row-major layout.
+   */
+  public void setLayoutTileSize(int layoutTileSize) {
+    if (layoutTileSize < 0 || (layoutTileSize & (layoutTileSize - 1)) != 0) {
+      throw new IllegalArgumentException("The tile size must be a power of 2");
+    }
+    this.layoutTileSize = layoutTileSize;
+  }
+
+  /**
+   * The total number of threads the surface is split into.
+   *
+   * @return The number of threads, zero if the planet's thread count is the
+   * width of a square grid
+   */
+  public int getThreadCount() {
+    return threadCount;
+  }
+
+  /**
+   * Splits the surface into exactly the given number of threads, arranged in
+   * the grid closest to square, so the threads can match the number of cores
+   * (e.g. 6, 12 or 24). The thread count given to the planet is ignored when
+   * this is set. This needs to be set before the planet is created and has no
+   * effect if the surface runs on a worker pool.
+   *
+   * @param threadCount The total number of threads. Zero keeps the square
+   * grid of the planet's thread count.
+   */
+  public void setThreadCount(int threadCount) {
+    if (threadCount < 0) {
+      throw new IllegalArgumentException("The thread count can't be negative");
+    }
+    this.threadCount = threadCount;
+  }
+
+  /**
+   * The pool the surface runs on as tiles.
+   *
+   * @return The pool or null if the surface runs on it's own threads
+   */
+  public ForkJoinPool getWorkerPool() {
+    return workerPool;
+  }
+
+  public int getTileSize() {
+    return tileSize;
+  }
+
+}
@@ -2,7 +2,6 @@ package worlds.planet;
 
 import engine.util.Vec2;
 import java.awt.Graphics2D;
-import static worlds.planet.Planet.instance;
 
 /**
  *
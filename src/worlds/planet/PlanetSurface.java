@@ -1,5 +1,7 @@
 package worlds.planet;
 
+import engine.surface.ArrayFieldStore;
+import engine.surface.FieldStoreFactory;
 import worlds.planet.geosphere.Geosphere;
 
 
@@ -10,17 +12,13 @@ import worlds.planet.geosphere.Geosphere;
  */
 public class PlanetSurface extends Geosphere {
 
-  public static boolean suppressMantelHeating;
-  public static boolean suppressAtmosphere;
-
-  static {
-    suppressMantelHeating = false;
-    suppressAtmosphere = false;
+  public PlanetSurface(PlanetContext context, int totalSize, int threadsDelay, int threadCount) {
+    this(context, totalSize, threadsDelay, threadCount, ArrayFieldStore::new);
   }
 
-  public PlanetSurface(int totalSize, int threadsDelay, int threadCount) {
-    super(totalSize, threadsDelay, threadCount);
-
+  public PlanetSurface(PlanetContext context, int totalSize, int threadsDelay, int threadCount,
+          FieldStoreFactory storeFactory) {
+    super(context, totalSize, threadsDelay, threadCount, storeFactory);
   }
 
 }
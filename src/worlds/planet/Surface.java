@@ -1,7 +1,7 @@
 package worlds.planet;
 
-import java.util.concurrent.atomic.AtomicLong;
-
+import engine.surface.ArrayFieldStore;
+import engine.surface.FieldStoreFactory;
 import engine.surface.SurfaceMap;
 import worlds.MinMaxHeightFactory;
 
@@ -13,21 +13,12 @@ import worlds.MinMaxHeightFactory;
 public abstract class Surface extends SurfaceMap<PlanetCell> {
 
   /**
-   * The number of years that pass for each step of erosion
+   * The size of the cells, age and time step of the planet this surface
+   * belongs to.
    */
-  public static long GEOUPDATE;
+  private final PlanetContext context;
   private long geologicalTimeStamp;
 
-  /**
-   * The age of the planet in years
-   */
-  public static AtomicLong planetAge;
-  
-  /**
-   * The number of years that pass for each update to the geosphere
-   */
-  public static long timeStep;
-
   public final static int HEIGHTMAP = 0;
   public final static int STRATAMAP = 1;
   public final static int LANDOCEAN = 2;
@@ -36,21 +27,49 @@ public abstract class Surface extends SurfaceMap<PlanetCell> {
 
   private final MinMaxHeightFactory mhFactory;
 
-  static {
-    timeStep = 7125000;
+  /**
+   * Constructs a new Surface with an empty map.
+   *
+   * @param context The state of the planet this surface belongs to
+   * @param totalSize The size of the surface
+   * @param threadsDelay The amount of time to delay each frame in milliseconds.
+   * @param threadCount The number of threads that will work on the map
+   */
+  public Surface(PlanetContext context, int totalSize, int threadsDelay, int threadCount) {
+    this(context, totalSize, threadsDelay, threadCount, ArrayFieldStore::new);
   }
 
   /**
-   * Constructs a new Surface with an empty map.
+   * Constructs a new Surface with an empty map where the state of each cell is
+   * kept in a FieldStore built by the given factory. If the context has a
+   * worker pool the surface runs as tiles on it instead of it's own threads,
+   * if it has a thread count the surface is split into that many threads and
+   * if it has a layout tile size the cells are laid out in tiles.
    *
+   * @param context The state of the planet this surface belongs to
    * @param totalSize The size of the surface
    * @param threadsDelay The amount of time to delay each frame in milliseconds.
    * @param threadCount The number of threads that will work on the map
+   * @param storeFactory Creates the backend for the cell state
    */
-  public Surface(int totalSize, int threadsDelay, int threadCount) {
+  public Surface(PlanetContext context, int totalSize, int threadsDelay, int threadCount,
+          FieldStoreFactory storeFactory) {
     super(totalSize, DEFAULT_THREAD_DELAY);
-    setupThreads(threadCount, threadsDelay);
-    setupDefaultMap(threadCount);
+    this.context = context;
+    setParallelBuild(true);
+    if (context.getWorkerPool() != null) {
+      setupTiledThreads(context.getTileSize(), threadsDelay, context.getWorkerPool());
+    } else if (context.getThreadCount() > 0) {
+      setupThreadCount(context.getThreadCount(), threadsDelay);
+    } else {
+      setupThreads(threadCount, threadsDelay);
+    }
+    setConcurrentTasks(true);
+    if (context.getLayoutTileSize() > 0) {
+      setTiledLayout(context.getLayoutTileSize());
+    }
+    setupArrayMap();
+    setupFieldStore(storeFactory, PlanetCell.FIELDS);
     mhFactory = new MinMaxHeightFactory(this);
     produceTasks(mhFactory);
     reset();
@@ -62,28 +81,60 @@ public abstract class Surface extends SurfaceMap<PlanetCell> {
    */
   @Override
   public final void reset() {
-    planetAge = new AtomicLong(0);
+    context.resetAge();
     geologicalTimeStamp = 0;
     pauseThreads();
     buildMap();
-    addTaskToThreads(new SetParentThreads());
+    produceTasks(SetParentThreads::new);
     playThreads();
   }
 
+  public PlanetContext getContext() {
+    return context;
+  }
+
   public long getPlanetAge() {
-    return planetAge.get();
+    return context.getPlanetAge();
   }
 
   public void updatePlanetAge() {
-    long curPlanetAge = planetAge.getAndAdd(timeStep);
-    if (curPlanetAge - geologicalTimeStamp > GEOUPDATE) {
+    long curPlanetAge = context.advanceAge();
+    if (curPlanetAge - geologicalTimeStamp > context.getGeoUpdate()) {
       geologicalTimeStamp = curPlanetAge;
     }
   }
 
+  /**
+   * Each frame of the surface ages the planet by one time step.
+   */
+  @Override
+  protected void onFrame() {
+    updatePlanetAge();
+  }
+
+  /**
+   * Steps the surface until the planet is at least the given age.
+   *
+   * @param age The age of the planet in years
+   * @throws InterruptedException If interrupted while waiting for the frames
+   * @see #step(int)
+   */
+  public void runUntil(long age) throws InterruptedException {
+    long timeStep = context.getTimeStep();
+    if (timeStep <= 0) {
+      throw new IllegalStateException("The planet doesn't age without a time step");
+    }
+    long remaining = age - getPlanetAge();
+    while (remaining > 0) {
+      long frames = (remaining + timeStep - 1) / timeStep;
+      step((int) Math.min(frames, Integer.MAX_VALUE));
+      remaining = age - getPlanetAge();
+    }
+  }
+
   @Override
   public PlanetCell generateCell(int x, int y) {
-    return new PlanetCell(x, y);
+    return new PlanetCell(x, y, getFieldStore(), calcIndex(x, y), context);
   }
 
   public float getHighestHeight() {
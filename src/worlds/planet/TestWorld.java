@@ -1,5 +1,7 @@
 package worlds.planet;
 
+import engine.surface.ArrayFieldStore;
+
 /**
  * This class is used for testing purposes.
  *
@@ -46,4 +48,18 @@ public class TestWorld extends Planet {
     super((worldSize * threadCount) + 1, CELL_LENGTH, SURFACE_THREAD_DELAY, threadCount);
     startThreads();
   }
+
+  /**
+   * Constructs a new test world with the given context, several test worlds
+   * with their own contexts can run side by side.
+   *
+   * @param context The state of the world
+   * @param worldSize The size chunk for each thread
+   * @param threadCount The number of thread divisions
+   */
+  public TestWorld(PlanetContext context, int worldSize, int threadCount) {
+    super(context, (worldSize * threadCount) + 1, SURFACE_THREAD_DELAY, threadCount,
+            ArrayFieldStore::new);
+    startThreads();
+  }
 }
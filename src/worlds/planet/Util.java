@@ -38,6 +38,7 @@ public class Util {
    * @param from The center position
    * @param size Width of the surface
    * @return The calculated positions around the center point 'from'
+   * @see engine.surface.SurfaceMap#forEachNeighbor(int, int, java.util.function.IntConsumer)
    */
   public static Vec2[] getCellIndexesFrom(Vec2 from, int size) {
     int tx, ty, mx, my;
@@ -168,8 +169,8 @@ public class Util {
     return (tx >= b) ? tx - b : (tx < 0) ? b + tx : tx;
   }
 
-  public static float calcHeatRadiation(float temperature) {
-    return 5.7e-8f * ((float) Math.pow(temperature, 3)) * PlanetCell.area;
+  public static float calcHeatRadiation(float temperature, float area) {
+    return 5.7e-8f * (temperature * temperature * temperature) * area;
   }
   
   public static float calcMass(float height, long base, float density) {
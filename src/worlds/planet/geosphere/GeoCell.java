@@ -5,17 +5,18 @@ import java.util.Deque;
 import java.util.LinkedList;
 import java.util.List;
 
+import engine.surface.ArrayFieldStore;
+import engine.surface.FieldStore;
 import engine.util.Vec2;
 import java.util.Set;
 import worlds.planet.Util;
 import worlds.planet.Planet;
-import worlds.planet.PlanetCell;
+import worlds.planet.PlanetContext;
 import worlds.planet.PlanetSurface;
 
 import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.ThreadLocalRandom;
 
-import static worlds.planet.Planet.instance;
 import static worlds.planet.Surface.*;
 
 /**
@@ -37,25 +38,63 @@ public class GeoCell extends Mantle {
   private float totalStrataThickness;
 
   /**
-   * The total height makes adding up each layer faster. Each time a layer
-   * is removed or it's thickness is altered the totalMass is updated. The units
-   * are in kilograms.
+   * The sum of the specific heat of each layer and the number of layers,
+   * kept as layers are added and removed. Layers without a specific heat,
+   * such as a layer emptied of it's materials, are counted on their own so
+   * the average is NaN only while such a layer is in the strata. The sum is
+   * recounted every so often since layers can change while in the strata.
    */
-  private float totalMass;
+  private double specificHeatSum;
+  private int layerCount;
+  private int unknownHeatLayers;
+  private int heatUpdates;
+
+  /**
+   * The number of layers added or removed before the average specific heat
+   * is recounted from scratch.
+   */
+  private static final int RECOUNT_SPECIFIC_HEAT = 64;
+
+  /**
+   * The planet this cell belongs to.
+   */
+  protected final PlanetContext context;
+
+  /**
+   * The id of the total mass field. The total mass makes adding up each layer
+   * faster. Each time a layer is removed or it's thickness is altered the
+   * totalMass is updated. The units are in kilograms.
+   */
+  public static final int TOTAL_MASS = 1;
   
   /**
-   * The total volume is calculated each time layer is added or removed or
-   * updated and is used to determine the average density of this cell in cubic
-   * meters.
+   * The id of the total volume field. The total volume is calculated each time
+   * layer is added or removed or updated and is used to determine the average
+   * density of this cell in cubic meters.
    */
-  private float totalVolume;
+  public static final int TOTAL_VOLUME = 2;
 
   /**
-   * The amount of this cell that is currently submerged in the mantel.
+   * The id of the field for the amount of this cell that is currently
+   * submerged in the mantel.
    */
-  private float curAmountSubmerged;
+  public static final int AMOUNT_SUBMERGED = 3;
+
+  public static final int CRUST_TEMPERATURE = 4;
 
-  private float crustTemperature;
+  /**
+   * The id of the field holding the average specific heat of the strata. It's
+   * updated with the mass and volume each time a layer is added or removed so
+   * tasks can read it from the store without walking the strata.
+   */
+  public static final int SPECIFIC_HEAT = 5;
+
+  /**
+   * The names of each field a GeoCell keeps in a FieldStore, ordered by their
+   * ids.
+   */
+  public static final String[] FIELDS = {"Mantle Temperature", "Total Mass",
+    "Total Volume", "Amount Submerged", "Crust Temperature", "Specific Heat"};
   
   /**
    * A Point that is represented as the velocity for Plate Tectonics. When a
@@ -82,14 +121,54 @@ public class GeoCell extends Mantle {
   }
 
   /**
-   * Constructs a new GeoCell at the location (x, y) with the parent surface map
-   * provided.
+   * Constructs a new GeoCell at the location (x, y) that isn't part of a
+   * surface. The state of the cell is kept in it's own FieldStore.
    *
    * @param x The x coordinate
    * @param y The y coordinate
    */
   public GeoCell(int x, int y) {
-    super(x, y);
+    this(x, y, new ArrayFieldStore(FIELDS, 1), 0);
+  }
+
+  /**
+   * Constructs a new GeoCell that isn't part of a surface on the given
+   * planet.
+   *
+   * @param x The x coordinate
+   * @param y The y coordinate
+   * @param context The planet this cell belongs to
+   */
+  public GeoCell(int x, int y, PlanetContext context) {
+    this(x, y, new ArrayFieldStore(FIELDS, 1), 0, context);
+  }
+
+  /**
+   * Constructs a new GeoCell at the location (x, y) that keeps it's state in
+   * the given FieldStore.
+   *
+   * @param x The x coordinate
+   * @param y The y coordinate
+   * @param fields The store holding the state of this cell
+   * @param index The index of this cell in the store
+   */
+  public GeoCell(int x, int y, FieldStore fields, int index) {
+    this(x, y, fields, index, new PlanetContext());
+  }
+
+  /**
+   * Constructs a new GeoCell on the given planet that keeps it's state in the
+   * given FieldStore.
+   *
+   * @param x The x coordinate
+   * @param y The y coordinate
+   * @param fields The store holding the state of this cell
+   * @param index The index of this cell in the store
+   * @param context The planet this cell belongs to
+   */
+  public GeoCell(int x, int y, FieldStore fields, int index, PlanetContext context) {
+    super(x, y, fields, index);
+    this.context = context;
     setup();
   }
 
@@ -99,11 +178,15 @@ public class GeoCell extends Mantle {
     velocity = new Vec2(0, 0);
 
     totalStrataThickness = 0f;
-    totalMass = 0f;
-    totalVolume = 0f;
-    curAmountSubmerged = 0f;
-    crustTemperature = 0;
-    float mass = Util.calcMass(2, PlanetCell.area, 1.2f);
+    specificHeatSum = 0;
+    layerCount = 0;
+    unknownHeatLayers = 0;
+    heatUpdates = 0;
+    fields.set(TOTAL_MASS, index, 0f);
+    fields.set(TOTAL_VOLUME, index, 0f);
+    fields.set(AMOUNT_SUBMERGED, index, 0f);
+    fields.set(CRUST_TEMPERATURE, index, 0f);
+    float mass = Util.calcMass(2, context.getCellArea(), 1.2f);
     LayerMaterial m1 = new LayerMaterial("Test Material", mass, 0.3f, 1.2f, 1, null);
     Layer layer = new Layer();
     layer.addMaterial(m1);
@@ -119,14 +202,14 @@ public class GeoCell extends Mantle {
   }
 
   public void addCrustTemperature(float rate) {
-    crustTemperature += rate;
+    float crustTemperature = fields.add(CRUST_TEMPERATURE, index, rate);
     if (crustTemperature < -273) {
-      crustTemperature = -273;
+      fields.set(CRUST_TEMPERATURE, index, -273);
     }
   }
 
   public float getCrustTemperature() {
-    return crustTemperature;
+    return fields.get(CRUST_TEMPERATURE, index);
   }
   
   /**
@@ -136,13 +219,14 @@ public class GeoCell extends Mantle {
    */
   public GeoCell copy() {
 
-    GeoCell copy = new GeoCell(getX(), getY());
+    GeoCell copy = new GeoCell(getX(), getY(), context);
     Deque<Layer> copyStrata = new ConcurrentLinkedDeque<>();
 
     strata.forEach(layer -> {
       copyStrata.add(layer.copy());
     });
     copy.strata = copyStrata;
+    copy.recountSpecificHeat();
 
     return copy;
   }
@@ -163,8 +247,8 @@ public class GeoCell extends Mantle {
   public Deque<Layer> removeAllStrata() {
     Deque<Layer> removed = removeStrata(getStrataThickness());
     totalStrataThickness = 0f;
-    totalMass = 0f;
-    totalVolume = 0f;
+    fields.set(TOTAL_MASS, index, 0f);
+    fields.set(TOTAL_VOLUME, index, 0f);
     return removed;
   }
 
@@ -221,11 +305,11 @@ public class GeoCell extends Mantle {
   }
 
   public float getTotalMass() {
-    return totalMass;
+    return fields.get(TOTAL_MASS, index);
   }
 
   public float getTotalVolume() {
-    return totalVolume;
+    return fields.get(TOTAL_VOLUME, index);
   }
 
   /**
@@ -243,14 +327,14 @@ public class GeoCell extends Mantle {
     while (peekTopRockLayer() != null) {
 
       selectedRockLayer = removeTopRockLayer();
-      float rockLayerThickness = selectedRockLayer.getThickness();
+      float rockLayerThickness = selectedRockLayer.getThickness(context.getCellArea());
       Layer selectedType = selectedRockLayer;
 
       currentDepth += rockLayerThickness;
 
       if (currentDepth < depth) {
         float diff = depth - currentDepth;
-        float diffInMass = Util.calcMass(diff, PlanetCell.area, selectedType.getDensity());
+        float diffInMass = Util.calcMass(diff, context.getCellArea(), selectedType.getDensity());
         Set<LayerMaterial> removedMaterials = selectedRockLayer.removeMaterial(-diffInMass);
         Layer splitRockLayer = new Layer(removedMaterials);
         workingStrata.push(selectedRockLayer);
@@ -310,17 +394,72 @@ public class GeoCell extends Mantle {
       throw new IllegalArgumentException("The layer can't be null");
     }
     float mass = rock.getMass();
-    totalStrataThickness = Math.max(0, totalStrataThickness + Util.calcHeight(mass, PlanetCell.area, rock.getDensity()));
-    totalMass = Math.max(0, totalMass + mass);
-    totalVolume = Math.max(0, totalVolume + (mass / rock.getDensity()));
+    totalStrataThickness = Math.max(0, totalStrataThickness + Util.calcHeight(mass, context.getCellArea(), rock.getDensity()));
+    fields.set(TOTAL_MASS, index, Math.max(0, getTotalMass() + mass));
+    fields.set(TOTAL_VOLUME, index, Math.max(0, getTotalVolume() + (mass / rock.getDensity())));
+  }
+
+  /**
+   * Adds or removes a layer from the average specific heat of the strata.
+   *
+   * @param layer The layer being added or removed
+   * @param count 1 when the layer is added, -1 when it's removed
+   */
+  private void updateSpecificHeat(Layer layer, int count) {
+    if (++heatUpdates >= RECOUNT_SPECIFIC_HEAT) {
+      recountSpecificHeat();
+      return;
+    }
+    float specificHeat = layer.getSpecificHeat();
+    if (Float.isFinite(specificHeat)) {
+      specificHeatSum += count * specificHeat;
+    } else {
+      unknownHeatLayers += count;
+    }
+    layerCount += count;
+    if (unknownHeatLayers < 0 || layerCount <= 0) {
+      // A layer changed while it was in the strata
+      recountSpecificHeat();
+      return;
+    }
+    setSpecificHeat();
+  }
+
+  /**
+   * Counts the average specific heat of the strata from scratch, used when
+   * the whole strata is replaced and every so often to keep the running sum
+   * from drifting.
+   */
+  private void recountSpecificHeat() {
+    specificHeatSum = 0;
+    layerCount = 0;
+    unknownHeatLayers = 0;
+    heatUpdates = 0;
+    for (Layer layer : strata) {
+      float specificHeat = layer.getSpecificHeat();
+      if (Float.isFinite(specificHeat)) {
+        specificHeatSum += specificHeat;
+      } else {
+        unknownHeatLayers++;
+      }
+      layerCount++;
+    }
+    setSpecificHeat();
+  }
+
+  private void setSpecificHeat() {
+    float average = unknownHeatLayers > 0 ? Float.NaN
+            : (float) (specificHeatSum / layerCount);
+    fields.set(SPECIFIC_HEAT, index, average);
   }
 
+  /**
+   * The average specific heat of the layers in the strata.
+   *
+   * @return The average specific heat
+   */
   public float getSpecificHeat() {
-    float sp = 0;
-    sp = strata.stream()
-            .map((layer) -> layer.getSpecificHeat())
-            .reduce(sp, (accumulator, _item) -> accumulator + _item);
-    return sp / strata.size();
+    return fields.get(SPECIFIC_HEAT, index);
   }
   
   /**
@@ -338,6 +477,7 @@ public class GeoCell extends Mantle {
       }
       strata.push(layer);
       updateMV(layer);
+      updateSpecificHeat(layer, 1);
     }
   }
 
@@ -356,6 +496,7 @@ public class GeoCell extends Mantle {
       }
       strata.addLast(layer);
       updateMV(layer);
+      updateSpecificHeat(layer, 1);
     }
   }
 
@@ -415,6 +556,7 @@ public class GeoCell extends Mantle {
       throw new IllegalArgumentException("removed cannot be null");
     }
     updateMV(removed);
+    updateSpecificHeat(removed, -1);
     return removed;
   }
 
@@ -483,13 +625,13 @@ public class GeoCell extends Mantle {
     float cellHeight;
     float oceanVolume = 0;//((HydroCell) this).getOceanVolume();
 
-    cellHeight = (oceanVolume + getTotalVolume()) / PlanetCell.area;
+    cellHeight = (oceanVolume + getTotalVolume()) / context.getCellArea();
 
-    if (instance().getTimeScale() == Planet.TimeScale.Geological) {
+    if (context.getTimeScale() == Planet.TimeScale.Geological) {
       recalculateHeight();
     }
 
-    return cellHeight - curAmountSubmerged;
+    return cellHeight - fields.get(AMOUNT_SUBMERGED, index);
 
   }
 
@@ -502,11 +644,11 @@ public class GeoCell extends Mantle {
     float cellHeight, amountSubmerged, density = getDensity();
     float oceanVolume = 0;//((HydroCell) this).getOceanVolume();
 
-    cellHeight = (oceanVolume + getTotalVolume()) / PlanetCell.area;
+    cellHeight = (oceanVolume + getTotalVolume()) / context.getCellArea();
     float factor = mantleDensityFactor();
     amountSubmerged = cellHeight * density / (Mantle.mantle_density * factor);
 
-    curAmountSubmerged = amountSubmerged;
+    fields.set(AMOUNT_SUBMERGED, index, amountSubmerged);
   }
 
   public boolean hasOcean() {
@@ -1,5 +1,9 @@
 package worlds.planet.geosphere;
 
+import engine.surface.ArrayFieldStore;
+import engine.surface.HaloField;
+import engine.surface.FieldStoreFactory;
+import worlds.planet.PlanetContext;
 import worlds.planet.Surface;
 import worlds.planet.geosphere.tasks.MantleConduction;
 import worlds.planet.geosphere.tasks.MantleRadiation;
@@ -12,14 +16,20 @@ public abstract class Geosphere extends Surface {
 
   private long ageStamp;
   
-  public Geosphere(int totalSize, int threadsDelay, int threadCount) {
-    super(totalSize, threadsDelay, threadCount);
+  public Geosphere(PlanetContext context, int totalSize, int threadsDelay, int threadCount) {
+    this(context, totalSize, threadsDelay, threadCount, ArrayFieldStore::new);
+  }
+
+  public Geosphere(PlanetContext context, int totalSize, int threadsDelay, int threadCount,
+          FieldStoreFactory storeFactory) {
+    super(context, totalSize, threadsDelay, threadCount, storeFactory);
     ageStamp = 0;
+    HaloField mantleTemperatures = haloField(GeoCell.MANTLE_TEMPERATURE, 1);
     produceTasks(() -> {
       return new MantleRadiation(this);
     });
     produceTasks(() -> {
-      return new MantleConduction(this);
+      return new MantleConduction(this, mantleTemperatures);
     });
   }
   
@@ -3,8 +3,7 @@ package worlds.planet.geosphere;
 
 import java.util.HashSet;
 import java.util.Set;
-import worlds.planet.PlanetCell;
-import worlds.planet.Surface;
+import worlds.planet.PlanetContext;
 
 /**
  *
@@ -74,14 +73,16 @@ public class Layer {
   }
   
   /**
-   * Sets the age of this cell to the time stamp given.
+   * Sets the time this layer was deposited to the current age of the planet.
+   *
+   * @param context The planet this layer is on
    */
-  public void recordTime() {
-    this.depositTimeStamp = Surface.planetAge.get();
+  public void recordTime(PlanetContext context) {
+    this.depositTimeStamp = context.getPlanetAge();
   }
 
-  public long getAge() {
-    return Surface.planetAge.get() - depositTimeStamp;
+  public long getAge(PlanetContext context) {
+    return context.getPlanetAge() - depositTimeStamp;
   }
   
   private void update() {
@@ -171,10 +172,11 @@ public class Layer {
    * The thickness is calculated based on the volume of the stratum and the area
    * of a cell. This is also the same as height.
    *
+   * @param cellArea The area of the cell the stratum is in
    * @return The thickness of this stratum.
    */
-  public float getThickness() {
-    return getVolume() / PlanetCell.area;
+  public float getThickness(float cellArea) {
+    return getVolume() / cellArea;
   }
   
   public float getSpecificHeat() {
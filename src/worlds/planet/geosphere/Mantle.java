@@ -3,8 +3,8 @@ package worlds.planet.geosphere;
 import java.awt.Color;
 import java.util.List;
 import engine.surface.Cell;
-import engine.util.concurrent.AtomicFloat;
-import java.util.concurrent.ThreadLocalRandom;
+import engine.surface.FieldStore;
+import engine.surface.SurfaceMap;
 import worlds.planet.Util;
 
 /**
@@ -19,7 +19,17 @@ public class Mantle extends Cell {
   public static float[][] heatMap;
   public static float[] heatMapFl;
 
-  private final AtomicFloat temperature;
+  /**
+   * The id of the mantle temperature field.
+   */
+  public static final int MANTLE_TEMPERATURE = 0;
+
+  /**
+   * The columns this cell's scalar state is kept in and the index of this
+   * cell in those columns.
+   */
+  protected final FieldStore fields;
+  protected final int index;
   
   /**
    * The average density of the mantel. The units are in kilograms per cubic
@@ -32,9 +42,19 @@ public class Mantle extends Cell {
     heatMap = Util.constructSamples(colors, 50);
   }
 
-  public Mantle(int x, int y) {
+  /**
+   * Constructs a new Mantle cell that keeps it's state in the given store.
+   *
+   * @param x The x coordinate
+   * @param y The y coordinate
+   * @param fields The store holding the state of this cell
+   * @param index The index of this cell in the store
+   */
+  public Mantle(int x, int y, FieldStore fields, int index) {
     super(x, y);
-    temperature = new AtomicFloat(ThreadLocalRandom.current().nextInt(2500, 4000));
+    this.fields = fields;
+    this.index = index;
+    fields.set(MANTLE_TEMPERATURE, index, 2500 + SurfaceMap.random().nextInt(1500));
   }
 
   
@@ -44,29 +64,38 @@ public class Mantle extends Cell {
    * @return A value between 1 and 0. Value of 1 is a temperature of zero.
    */
   public float mantleDensityFactor() {
-    float temp = temperature.get();
+    float temp = getMantleTemperature();
     return -0.00000006f * (temp * temp) + 1f;
   }
   
   public void addToMantleHeat(float amount) {
-    float temp = temperature.get() + amount;
+    float temp = getMantleTemperature() + amount;
     if (temp > 4000) {
-      temperature.getAndSet(4000);
+      fields.set(MANTLE_TEMPERATURE, index, 4000);
     } else if (temp < -273) {
-      temperature.getAndSet(-273);
+      fields.set(MANTLE_TEMPERATURE, index, -273);
     } else {
-      temperature.getAndSet(temp);
+      fields.set(MANTLE_TEMPERATURE, index, temp);
     }
   }
 
   public float getMantleTemperature() {
-    return temperature.get();
+    return fields.get(MANTLE_TEMPERATURE, index);
+  }
+
+  /**
+   * The index of this cell in the FieldStore.
+   *
+   * @return The index of this cell.
+   */
+  public int getIndex() {
+    return index;
   }
 
 //  @Override
 //  public List<Integer[]> render(List<Integer[]> settings) {
 //
-//    int index = (int) (temperature.get() / 12);
+//    int index = (int) (getMantleTemperature() / 12);
 //    index = index >= heatMap.length - 1 ? heatMap.length - 1 : index < 0 ? 0 : index;
 //    settings.add(heatMap[index]);
 //
@@ -1,26 +1,49 @@
-
 package worlds.planet.geosphere.tasks;
 
+import engine.surface.ArrayFieldStore;
+import engine.surface.HaloField;
 import engine.util.Delay;
-import engine.util.Vec2;
+import engine.util.task.Boundaries;
 import engine.util.task.Task;
-import worlds.planet.PlanetCell;
-import worlds.planet.Util;
 import worlds.planet.geosphere.GeoCell;
 import worlds.planet.geosphere.Geosphere;
 
+import static engine.surface.SurfaceMap.DIR_X_INDEX;
+import static engine.surface.SurfaceMap.DIR_Y_INDEX;
+
 /**
+ * Conducts heat between neighboring cells of the mantle. Temperatures are read
+ * from the thread's region of the previous frame, neighbors across the region
+ * border come from the region's halo. The result doesn't depend on the order
+ * the threads update their regions in. With array kernels each row of the
+ * region is conducted by a loop over the region and the temperature column.
+ * A kernel sweeps the region on it's own, so with array kernels this task
+ * isn't fused with the tasks next to it.
  *
  * @author Richard
  */
 public class MantleConduction extends Task {
 
   private final Geosphere surface;
+  private final HaloField temperatures;
   private final Delay delay;
+  private final float cellLength;
+  private HaloField.Region region;
+  private int[] neighbors;
+  private float[] change;
   
-  public MantleConduction(Geosphere surface) {
+  public MantleConduction(Geosphere surface, HaloField temperatures) {
     this.surface = surface;
+    this.temperatures = temperatures;
     delay = new Delay(250);
+    change = new float[0];
+    cellLength = surface.getContext().getCellLength();
+    reads(GeoCell.MANTLE_TEMPERATURE);
+    writes(GeoCell.MANTLE_TEMPERATURE);
+    // Neighbors are read from the halo, never from cells written this frame
+    fusable = true;
+    // Left on the manager's traversal, the Hilbert curve swept the cells
+    // several times slower than row-major order in TraversalBenchmark
   }
   
   @Override
@@ -33,19 +56,40 @@ public class MantleConduction extends Task {
 
   @Override
   public void before() throws Exception {
+    region = temperatures.getRegion(getThread());
+    neighbors = region.neighborOffsets(DIR_X_INDEX, DIR_Y_INDEX);
   }
 
   @Override
   public void perform(int x, int y) throws Exception {
     GeoCell cell = surface.getCellAt(x, y);
-    Vec2[] cells = Util.getCellIndexesFrom(cell.getGridPosition(), surface.getTerrainSize());
-    float temp = cell.getMantleTemperature(); 
-    for (Vec2 pos : cells) {
-      GeoCell neighborCell = surface.getCellAt(pos);
-      float cellTemp = neighborCell.getMantleTemperature();
-      float tempChange = (PlanetCell.length * (temp - cellTemp)) / (1e7f);
-      cell.addToMantleHeat(-tempChange);
+    int local = region.localIndex(x, y);
+    float temp = region.get(local);
+    float tempChange = 0;
+    for (int offset : neighbors) {
+      float cellTemp = region.get(local + offset);
+      tempChange += (cellLength * (temp - cellTemp)) / (1e7f);
     }
+    cell.addToMantleHeat(-tempChange);
+  }
+
+  @Override
+  public boolean performsBounds() {
+    return surface.getContext().useArrayKernels()
+            && surface.getFieldStore() instanceof ArrayFieldStore;
+  }
+
+  @Override
+  public void performBounds(Boundaries bounds) throws Exception {
+    float[] temps = ((ArrayFieldStore) surface.getFieldStore()).getColumn(GeoCell.MANTLE_TEMPERATURE);
+    float[] values = region.getValues();
+    surface.forEachRun(bounds, (x, y, index, length) -> {
+      if (change.length < length) {
+        change = new float[length];
+      }
+      MantleKernels.conduct(temps, index, values, region.localIndex(x, y),
+              neighbors, cellLength, change, length);
+    });
   }
 
   @Override
@@ -0,0 +1,73 @@
+package worlds.planet.geosphere.tasks;
+
+/**
+ * The mantle tasks written as loops over runs of the field columns. Each loop
+ * reads and writes plain float arrays at consecutive indexes with no calls or
+ * branches in the body so the JIT can compile it to SIMD instructions. The
+ * arithmetic is the same as the per cell tasks, done in the same order.
+ *
+ * @author Richard DeSilvey
+ */
+final class MantleKernels {
+
+  static final float MIN_TEMPERATURE = -273, MAX_TEMPERATURE = 4000;
+
+  private MantleKernels() {
+  }
+
+  /**
+   * Radiates heat out of the mantle of each cell in the run.
+   *
+   * @param temps The mantle temperature column
+   * @param mass The total mass column
+   * @param specificHeat The specific heat column
+   * @param cellArea The area of a cell
+   * @param from The first index of the run
+   * @param to The index after the last cell of the run
+   */
+  static void radiate(float[] temps, float[] mass, float[] specificHeat,
+          float cellArea, int from, int to) {
+    for (int i = from; i < to; i++) {
+      float t = temps[i];
+      float heat = 5.7e-8f * (t * t * t) * cellArea;
+      float denom = mass[i] * specificHeat[i];
+      denom = denom == 0 ? 1 : denom;
+      temps[i] = clamp(t - (heat / denom) * 0.001f);
+    }
+  }
+
+  /**
+   * Conducts heat between each cell in the run and it's neighbors. The
+   * changes are summed one neighbor at a time across the whole run so each
+   * pass is a straight loop over the region.
+   *
+   * @param temps The mantle temperature column
+   * @param from The index of the first cell of the run
+   * @param region The values of the region holding the run
+   * @param local The local index of the first cell in the region
+   * @param neighbors The offsets of the neighbors in the region
+   * @param cellLength The length of a cell
+   * @param change Scratch space at least as long as the run
+   * @param length The number of cells in the run
+   */
+  static void conduct(float[] temps, int from, float[] region, int local,
+          int[] neighbors, float cellLength, float[] change, int length) {
+    for (int i = 0; i < length; i++) {
+      change[i] = 0;
+    }
+    for (int offset : neighbors) {
+      int n = local + offset;
+      for (int i = 0; i < length; i++) {
+        change[i] += (cellLength * (region[local + i] - region[n + i])) / (1e7f);
+      }
+    }
+    for (int i = 0; i < length; i++) {
+      temps[from + i] = clamp(temps[from + i] - change[i]);
+    }
+  }
+
+  private static float clamp(float temperature) {
+    return Math.max(MIN_TEMPERATURE, Math.min(MAX_TEMPERATURE, temperature));
+  }
+
+}
@@ -1,7 +1,9 @@
 
 package worlds.planet.geosphere.tasks;
 
+import engine.surface.ArrayFieldStore;
 import engine.util.Delay;
+import engine.util.task.Boundaries;
 import engine.util.task.Task;
 import worlds.planet.Util;
 import worlds.planet.geosphere.GeoCell;
@@ -11,18 +13,27 @@ import worlds.planet.geosphere.Geosphere;
  * Mantel Cooling can take place when heat is transfered to the crust above.
  * Depending on the specific heat of the crust on average, the amount
  * of heat the mantel has, and how thick the crust is will all determine how
- * much heat is diffused into the rock above. 
+ * much heat is diffused into the rock above. When the planet uses array
+ * kernels and the fields are on the heap the whole region is cooled by a
+ * loop over the field columns, otherwise each cell is cooled on it's own.
+ * The kernel sweeps the region on it's own, so with array kernels this task
+ * isn't fused with the tasks next to it.
  * @author Richard
  */
 public class MantleRadiation extends Task {
 
   private final Geosphere geosphere;
   private final Delay delay;
+  private final float cellArea;
   
   
   public MantleRadiation(Geosphere geosphere) {
     this.geosphere = geosphere;
     delay = new Delay(400);
+    cellArea = geosphere.getContext().getCellArea();
+    reads(GeoCell.MANTLE_TEMPERATURE, GeoCell.TOTAL_MASS, GeoCell.SPECIFIC_HEAT);
+    writes(GeoCell.MANTLE_TEMPERATURE);
+    fusable = true;
   }
   
   @Override
@@ -32,7 +43,7 @@ public class MantleRadiation extends Task {
   @Override
   public void perform(int x, int y) {
     GeoCell cell = geosphere.getCellAt(x, y);
-    float heatFromMantle = Util.calcHeatRadiation(cell.getMantleTemperature());
+    float heatFromMantle = Util.calcHeatRadiation(cell.getMantleTemperature(), cellArea);
     float denom = (cell.getTotalMass() * cell.getSpecificHeat());
     denom = denom == 0 ? 1 : denom;
     float tempChangeToMantle = heatFromMantle / denom;
@@ -40,6 +51,23 @@ public class MantleRadiation extends Task {
     cell.addToMantleHeat(-tempChangeToMantle * 0.001f);
   }
 
+  @Override
+  public boolean performsBounds() {
+    return geosphere.getContext().useArrayKernels()
+            && geosphere.getFieldStore() instanceof ArrayFieldStore;
+  }
+
+  @Override
+  public void performBounds(Boundaries bounds) throws Exception {
+    ArrayFieldStore store = (ArrayFieldStore) geosphere.getFieldStore();
+    float[] temps = store.getColumn(GeoCell.MANTLE_TEMPERATURE);
+    float[] mass = store.getColumn(GeoCell.TOTAL_MASS);
+    float[] specificHeat = store.getColumn(GeoCell.SPECIFIC_HEAT);
+    geosphere.forEachRun(bounds, (x, y, index, length) -> {
+      MantleKernels.radiate(temps, mass, specificHeat, cellArea, index, index + length);
+    });
+  }
+
   @Override
   public void after() {
   }
@@ -0,0 +1,72 @@
+
+import engine.util.concurrent.AtomicFloat;
+import engine.util.concurrent.AtomicFloatArray;
+import engine.util.concurrent.FloatAdder;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the lock-free float accumulators, none of the concurrent additions
+ * should be lost.
+ *
+ * @author Richard DeSilvey
+ */
+public class AtomicFloatTest {
+
+  private static final int THREADS = 4, ADDS = 20000;
+
+  private static void runConcurrently(Runnable work) throws InterruptedException {
+    List<Thread> threads = new ArrayList<>();
+    for (int i = 0; i < THREADS; i++) {
+      Thread thread = new Thread(() -> {
+        for (int j = 0; j < ADDS; j++) {
+          work.run();
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+
+  @Test
+  public void atomicFloatTest() throws InterruptedException {
+    AtomicFloat value = new AtomicFloat(0);
+    assertEquals(0f, value.getAndAdd(2f), 0f);
+    assertEquals(5f, value.addAndGet(3f), 0f);
+    assertEquals(7f, value.accumulateAndGet(7f, Math::max), 0f);
+    assertEquals(7f, value.getAndUpdate(v -> 0), 0f);
+
+    runConcurrently(() -> value.addAndGet(1f));
+    assertEquals(THREADS * ADDS, value.get(), 0f);
+  }
+
+  @Test
+  public void atomicFloatArrayTest() throws InterruptedException {
+    AtomicFloatArray array = new AtomicFloatArray(3);
+    assertEquals(0f, array.get(2), 0f);
+    array.set(1, 4f);
+    assertTrue(array.compareAndSet(1, 4f, 5f));
+    assertFalse(array.compareAndSet(1, 4f, 6f));
+    assertEquals(2f, array.accumulateAndGet(0, 2f, Math::max), 0f);
+    assertEquals("[2.0, 5.0, 0.0]", array.toString());
+
+    runConcurrently(() -> array.getAndAdd(2, 1f));
+    assertEquals(THREADS * ADDS, array.get(2), 0f);
+    assertEquals(5f, array.get(1), 0f);
+  }
+
+  @Test
+  public void floatAdderTest() throws InterruptedException {
+    FloatAdder adder = new FloatAdder(THREADS);
+    runConcurrently(() -> adder.add(1f));
+    assertEquals(THREADS * ADDS, adder.sum(), 0f);
+    assertEquals(THREADS * ADDS, adder.sumThenReset(), 0f);
+    assertEquals(0f, adder.sum(), 0f);
+  }
+
+}
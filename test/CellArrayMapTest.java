@@ -0,0 +1,63 @@
+
+import engine.surface.Cell;
+import engine.surface.CellArrayMap;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the CellArrayMap used as the flat cell store for a SurfaceMap.
+ *
+ * @author Richard DeSilvey
+ */
+public class CellArrayMapTest {
+
+  private static final int CAPACITY = 16;
+
+  private CellArrayMap<ArrayTestCell> map;
+
+  @Before
+  public void setUp() {
+    map = new CellArrayMap<>(CAPACITY);
+  }
+
+  @Test
+  public void putAndGetTest() {
+    ArrayTestCell cell = new ArrayTestCell(1, 2);
+    assertNull(map.put(5, cell));
+    assertSame(cell, map.get(5));
+    assertSame("Boxed lookups should match", cell, map.get(Integer.valueOf(5)));
+    assertEquals(1, map.size());
+    assertNull(map.get(6));
+    assertNull("Out of range indexes don't exist", map.get(CAPACITY));
+  }
+
+  @Test
+  public void valuesSkipEmptyIndexesTest() {
+    map.put(0, new ArrayTestCell(0, 0));
+    map.put(7, new ArrayTestCell(3, 1));
+    map.put(15, new ArrayTestCell(3, 3));
+
+    assertEquals(3, map.size());
+    assertEquals(3, map.values().size());
+    map.values().forEach(cell -> assertNotNull(cell));
+  }
+
+  @Test
+  public void clearTest() {
+    map.put(3, new ArrayTestCell(3, 0));
+    map.clear();
+    assertEquals(0, map.size());
+    assertNull(map.get(3));
+    assertEquals(CAPACITY, map.capacity());
+  }
+
+}
+
+class ArrayTestCell extends Cell {
+
+  public ArrayTestCell(int x, int y) {
+    super(x, y);
+  }
+
+}
@@ -0,0 +1,223 @@
+import engine.surface.Cell;
+import engine.surface.SurfaceMap;
+import engine.util.task.Boundaries;
+import engine.util.task.Task;
+import engine.util.task.TaskAdapter;
+import engine.util.task.TaskManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests splitting the cells of a task into color passes.
+ *
+ * @author Richard DeSilvey
+ */
+public class ColorPassTest {
+
+  static final int FRAMES = 20;
+
+  @Test
+  public void colorOfTest() {
+    assertEquals(0, Task.colorOf(3, 5, 1));
+    assertEquals(0, Task.colorOf(3, 5, 2));
+    assertEquals(1, Task.colorOf(3, 4, 2));
+    assertEquals(3, Task.colorOf(3, 5, 4));
+    assertEquals(2, Task.colorOf(4, 5, 4));
+  }
+
+  /**
+   * Every cell of a color is performed before any cell of the next color and
+   * the gate is passed between each pass, even when the task skips the
+   * frame.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void passOrderTest() throws Exception {
+    AtomicInteger gates = new AtomicInteger();
+    List<Integer> visited = new ArrayList<>();
+    TaskManager manager = new TaskManager(new Boundaries(0, 4, 0, 4));
+    manager.setColorGate(gates::incrementAndGet);
+    ColorTask task = new ColorTask(4, visited);
+    manager.addTask(task);
+    manager.performTasks();
+
+    assertEquals(3, gates.get());
+    assertEquals(16, visited.size());
+    for (int i = 1; i < visited.size(); i++) {
+      assertTrue("Colors out of order", visited.get(i) >= visited.get(i - 1));
+    }
+
+    task.skip = true;
+    manager.performTasks();
+    assertEquals(6, gates.get());
+    assertEquals(16, visited.size());
+  }
+
+  /**
+   * A region that starts on odd coordinates and has an odd width still has
+   * each of it's cells performed once, in the pass of it's color.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void oddRegionPassesTest() throws Exception {
+    Boundaries bounds = new Boundaries(1, 6, 3, 6);
+    for (int colors : new int[]{2, 4}) {
+      List<Integer> visited = new ArrayList<>();
+      TaskManager manager = new TaskManager(bounds);
+      manager.addTask(new ColorTask(colors, visited));
+      manager.performTasks();
+
+      List<Integer> expected = new ArrayList<>();
+      for (int y = 3; y < 6; y++) {
+        for (int x = 1; x < 6; x++) {
+          expected.add(Task.colorOf(x, y, colors));
+        }
+      }
+      Collections.sort(expected);
+      assertEquals(expected, visited);
+    }
+  }
+
+  /**
+   * Two threads update cells in place from their adjacent cells. Within a
+   * pass every adjacent cell belongs to another color, so it was either
+   * updated in an earlier pass of the frame or not yet, never halfway.
+   *
+   * @throws InterruptedException
+   */
+  @Test
+  public void threadPassesTest() throws InterruptedException {
+    ColorTestSurface surface = new ColorTestSurface(16 + 1);
+    try {
+      surface.startThreads();
+      surface.playThreads();
+      assertTrue("Frames never finished", surface.awaitFrames());
+      assertEquals("A neighbor was updated out of order", 0, surface.getMismatches());
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+}
+
+class ColorTask extends Task {
+
+  private final List<Integer> visited;
+  boolean skip;
+
+  public ColorTask(int colors, List<Integer> visited) {
+    this.colors = colors;
+    this.visited = visited;
+  }
+
+  @Override
+  public void construct() {
+  }
+
+  @Override
+  public boolean check() {
+    return !skip;
+  }
+
+  @Override
+  public void before() {
+  }
+
+  @Override
+  public void perform(int x, int y) {
+    visited.add(colorOf(x, y, colors));
+  }
+
+  @Override
+  public void after() {
+  }
+
+}
+
+class ColorTestSurface extends SurfaceMap<ColorTestCell> {
+
+  private final AtomicInteger mismatches;
+  private final CountDownLatch frames;
+
+  public ColorTestSurface(int totalSize) {
+    super(totalSize, 0);
+    mismatches = new AtomicInteger();
+    frames = new CountDownLatch(ColorPassTest.FRAMES);
+    setupThreads(2, 0);
+    setupArrayMap();
+    buildMap();
+    produceTasks(() -> new TaskAdapter() {
+      {
+        colors = 2;
+      }
+
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+        ColorTestCell cell = getCellAt(x, y);
+        int color = colorOf(x, y, 2);
+        int updates = cell.getUpdates();
+        forEachAdjacent(x, y, index -> {
+          ColorTestCell adjacent = getCellAt(index);
+          int expected = (color == 1) ? updates + 1 : updates;
+          if (adjacent.getUpdates() != expected) {
+            mismatches.incrementAndGet();
+          }
+        });
+        cell.update();
+      }
+
+      @Override
+      public void after() {
+        if (getThread() == threadReferences.get(0)) {
+          frames.countDown();
+        }
+      }
+    });
+  }
+
+  public boolean awaitFrames() throws InterruptedException {
+    return frames.await(10, TimeUnit.SECONDS);
+  }
+
+  public int getMismatches() {
+    return mismatches.get();
+  }
+
+  @Override
+  public void reset() {
+  }
+
+  @Override
+  public ColorTestCell generateCell(int x, int y) {
+    return new ColorTestCell(x, y);
+  }
+}
+
+class ColorTestCell extends Cell {
+
+  private volatile int updates;
+
+  public ColorTestCell(int x, int y) {
+    super(x, y);
+  }
+
+  public void update() {
+    updates++;
+  }
+
+  public int getUpdates() {
+    return updates;
+  }
+}
@@ -0,0 +1,150 @@
+
+import engine.surface.ArrayFieldStore;
+import engine.surface.Cell;
+import engine.surface.SurfaceMap;
+import engine.util.concurrent.DeltaBuffer;
+import engine.util.concurrent.MThread;
+import engine.util.task.Boundaries;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the coalescing of changes posted to the cells of a thread's region.
+ *
+ * @author Richard DeSilvey
+ */
+public class DeltaBufferTest {
+
+  private DeltaBuffer buffer;
+  private List<float[]> applied;
+
+  @Before
+  public void setUp() {
+    buffer = new DeltaBuffer(new Boundaries(4, 8, 0, 4));
+    applied = new ArrayList<>();
+    buffer.setSink((x, y, field, amount) -> {
+      applied.add(new float[]{x, y, field, amount});
+    });
+  }
+
+  @Test
+  public void coalesceTest() {
+    buffer.post(5, 2, 1, 1.5f);
+    buffer.post(5, 2, 1, 2.5f);
+    buffer.post(7, 3, 0, -1f);
+
+    assertEquals(2, buffer.drain());
+    assertArrayEquals(new float[]{7, 3, 0, -1f}, applied.get(0), 0f);
+    assertArrayEquals(new float[]{5, 2, 1, 4f}, applied.get(1), 0f);
+
+    assertEquals("Changes were applied twice", 0, buffer.drain());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void outsideOfRegionTest() {
+    buffer.post(3, 0, 0, 1f);
+  }
+
+  /**
+   * A cell one column past either side of the region would still fall inside
+   * the region's cells if only the index were checked.
+   */
+  @Test
+  public void pastRegionColumnTest() {
+    int[][] outside = {{8, 0}, {8, 2}, {3, 1}, {3, 3}};
+    for (int[] cell : outside) {
+      try {
+        buffer.post(cell[0], cell[1], 0, 1f);
+        fail("Posted to (" + cell[0] + ", " + cell[1] + ")");
+      } catch (IllegalArgumentException e) {
+      }
+    }
+    assertEquals(0, buffer.drain());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badFieldTest() {
+    buffer.post(5, 2, DeltaBuffer.MAX_FIELDS, 1f);
+  }
+
+  @Test
+  public void concurrentPostsTest() throws InterruptedException {
+    int threads = 4, posts = 10000;
+    List<Thread> producers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      Thread producer = new Thread(() -> {
+        for (int i = 0; i < posts; i++) {
+          buffer.post(4, 0, 2, 1f);
+        }
+      });
+      producers.add(producer);
+      producer.start();
+    }
+    float total = 0;
+    for (Thread producer : producers) {
+      producer.join();
+    }
+    buffer.drain();
+    for (float[] change : applied) {
+      total += change[3];
+    }
+    assertEquals(threads * posts, total, 0f);
+  }
+
+  @Test
+  public void surfaceDeltaTest() {
+    DeltaTestSurface surface = new DeltaTestSurface(8 + 1);
+    try {
+      surface.postDelta(1, 1, 0, 2f);
+      assertEquals("No owner, applied right away", 2f,
+              surface.getFieldStore().get(0, surface.calcIndex(1, 1)), 0f);
+
+      MThread owner = surface.getThreads().get(0);
+      surface.getCellAt(1, 1).setParentThread(owner);
+      surface.postDelta(1, 1, 0, 3f);
+      surface.postDelta(1, 1, 0, 3f);
+      assertEquals(2f, surface.getFieldStore().get(0, surface.calcIndex(1, 1)), 0f);
+      owner.processEventQueue();
+      assertEquals(8f, surface.getFieldStore().get(0, surface.calcIndex(1, 1)), 0f);
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+}
+
+class DeltaTestSurface extends SurfaceMap<DeltaTestCell> {
+
+  public DeltaTestSurface(int totalSize) {
+    super(totalSize, 1);
+    setupThreads(2, 1);
+    setupArrayMap();
+    setupFieldStore(ArrayFieldStore::new, "Value");
+    buildMap();
+  }
+
+  public List<MThread> getThreads() {
+    return threadReferences;
+  }
+
+  @Override
+  public void reset() {
+  }
+
+  @Override
+  public DeltaTestCell generateCell(int x, int y) {
+    return new DeltaTestCell(x, y);
+  }
+
+}
+
+class DeltaTestCell extends Cell {
+
+  public DeltaTestCell(int x, int y) {
+    super(x, y);
+  }
+
+}
@@ -0,0 +1,90 @@
+
+import engine.util.concurrent.EventQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the bounded event queue used by each MThread.
+ *
+ * @author Richard DeSilvey
+ */
+public class EventQueueTest {
+
+  private static final int CAPACITY = 8;
+
+  private EventQueue queue;
+  private AtomicInteger executed;
+
+  @Before
+  public void setUp() {
+    queue = new EventQueue(CAPACITY);
+    executed = new AtomicInteger();
+  }
+
+  @Test
+  public void drainOnceTest() {
+    assertTrue(queue.offer(executed::incrementAndGet));
+    assertTrue(queue.offer(executed::incrementAndGet));
+    assertEquals(2, queue.drain());
+    assertEquals("Events ran again", 0, queue.drain());
+    assertEquals(2, executed.get());
+    assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void fullQueueTest() {
+    for (int i = 0; i < CAPACITY; i++) {
+      assertTrue(queue.offer(executed::incrementAndGet));
+    }
+    assertFalse(queue.offer(executed::incrementAndGet));
+    assertEquals(1, queue.getRejectedCount());
+
+    queue.drain();
+    assertTrue("The slots should be free again", queue.offer(executed::incrementAndGet));
+  }
+
+  /**
+   * An event that posts another event while the queue is draining shouldn't
+   * run the new event until the next drain.
+   */
+  @Test
+  public void eventsPostedWhileDrainingTest() {
+    queue.offer(() -> queue.offer(executed::incrementAndGet));
+    assertEquals(1, queue.drain());
+    assertEquals(0, executed.get());
+    assertEquals(1, queue.drain());
+    assertEquals(1, executed.get());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void capacityTest() {
+    new EventQueue(6);
+  }
+
+  @Test
+  public void manyProducersTest() throws InterruptedException {
+    EventQueue large = new EventQueue(1 << 16);
+    int producers = 4, events = 5000;
+    CountDownLatch done = new CountDownLatch(producers);
+    for (int p = 0; p < producers; p++) {
+      new Thread(() -> {
+        for (int i = 0; i < events; i++) {
+          while (!large.offer(executed::incrementAndGet)) {
+            Thread.yield();
+          }
+        }
+        done.countDown();
+      }).start();
+    }
+    int drained = 0;
+    while (done.getCount() > 0 || large.size() > 0) {
+      drained += large.drain();
+    }
+    assertEquals(producers * events, drained);
+    assertEquals(producers * events, executed.get());
+  }
+
+}
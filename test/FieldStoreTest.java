@@ -0,0 +1,107 @@
+
+import engine.surface.ArrayFieldStore;
+import engine.surface.FieldStore;
+import engine.surface.MappedFieldStore;
+import java.io.File;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import worlds.planet.geosphere.GeoCell;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the FieldStore columns and the cells that keep their state in them.
+ *
+ * @author Richard DeSilvey
+ */
+public class FieldStoreTest {
+
+  private static final int CELL_COUNT = 8;
+
+  private FieldStore store;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Before
+  public void setUp() {
+    store = new ArrayFieldStore(GeoCell.FIELDS, CELL_COUNT);
+  }
+
+  @Test
+  public void fieldNamesTest() {
+    assertEquals(GeoCell.FIELDS.length, store.getFieldCount());
+    assertEquals(CELL_COUNT, store.getCellCount());
+    assertEquals(GeoCell.TOTAL_MASS, store.getFieldId("Total Mass"));
+    assertEquals("Mantle Temperature", store.getFieldName(GeoCell.MANTLE_TEMPERATURE));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void missingFieldTest() {
+    store.getFieldId("Not A Field");
+  }
+
+  @Test
+  public void setGetAndAddTest() {
+    store.set(GeoCell.TOTAL_MASS, 3, 10f);
+    assertEquals(10f, store.get(GeoCell.TOTAL_MASS, 3), 0f);
+    assertEquals(15f, store.add(GeoCell.TOTAL_MASS, 3, 5f), 0f);
+    assertEquals("Other cells shouldn't change", 0f, store.get(GeoCell.TOTAL_MASS, 2), 0f);
+    assertEquals("Other fields shouldn't change", 0f, store.get(GeoCell.TOTAL_VOLUME, 3), 0f);
+  }
+
+  @Test
+  public void cellStateInStoreTest() {
+    GeoCell cell = new GeoCell(1, 0, store, 1);
+    assertEquals(cell.getTotalMass(), store.get(GeoCell.TOTAL_MASS, 1), 0f);
+    assertTrue(cell.getTotalMass() > 0);
+
+    float temperature = cell.getMantleTemperature();
+    cell.addToMantleHeat(-10);
+    assertEquals(temperature - 10, store.get(GeoCell.MANTLE_TEMPERATURE, 1), 0f);
+  }
+
+  @Test
+  public void offHeapStoreTest() throws IOException {
+    MappedFieldStore offHeap = new MappedFieldStore(GeoCell.FIELDS, CELL_COUNT);
+    offHeap.set(GeoCell.TOTAL_VOLUME, CELL_COUNT - 1, 4f);
+    assertEquals(6f, offHeap.add(GeoCell.TOTAL_VOLUME, CELL_COUNT - 1, 2f), 0f);
+    assertEquals(0f, offHeap.get(GeoCell.TOTAL_VOLUME, 0), 0f);
+    offHeap.close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void oversizedFieldTest() {
+    new MappedFieldStore(GeoCell.FIELDS, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Fields mapped to files keep their values when the files are mapped again,
+   * even after the first store is closed. Deleting a store removes the files.
+   *
+   * @throws IOException
+   */
+  @Test
+  public void mappedFileStoreTest() throws IOException {
+    File directory = folder.newFolder("fields");
+    MappedFieldStore mapped = new MappedFieldStore(GeoCell.FIELDS, CELL_COUNT, directory);
+    mapped.set(GeoCell.AMOUNT_SUBMERGED, 2, 7.5f);
+
+    assertEquals(GeoCell.FIELDS.length, directory.listFiles().length);
+
+    MappedFieldStore remapped = new MappedFieldStore(GeoCell.FIELDS, CELL_COUNT, directory);
+    assertEquals(7.5f, remapped.get(GeoCell.AMOUNT_SUBMERGED, 2), 0f);
+    remapped.close();
+
+    mapped.close();
+    assertEquals(GeoCell.FIELDS.length, directory.listFiles().length);
+    MappedFieldStore reopened = new MappedFieldStore(GeoCell.FIELDS, CELL_COUNT, directory);
+    assertEquals(7.5f, reopened.get(GeoCell.AMOUNT_SUBMERGED, 2), 0f);
+
+    reopened.delete();
+    assertEquals(0, directory.listFiles().length);
+  }
+
+}
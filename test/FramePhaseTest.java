@@ -0,0 +1,199 @@
+
+import engine.surface.Cell;
+import engine.surface.SurfaceMap;
+import engine.util.concurrent.MThread;
+import engine.util.task.Boundaries;
+import engine.util.task.TaskAdapter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests frames split into phases. A task in the second phase reads cells
+ * written by other threads in the first phase, all of which need to be
+ * finished before the second phase starts.
+ *
+ * @author Richard DeSilvey
+ */
+public class FramePhaseTest {
+
+  static final int FRAMES = 20;
+
+  @Test
+  public void threadPhasesTest() throws InterruptedException {
+    PhaseTestSurface surface = new PhaseTestSurface(16 + 1, false);
+    try {
+      surface.startThreads();
+      surface.playThreads();
+      assertTrue("Frames never finished", surface.awaitFrames());
+      assertEquals("A neighbor wasn't written yet", 0, surface.getMismatches());
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+  @Test
+  public void tilePhasesTest() throws Exception {
+    PhaseTestSurface surface = new PhaseTestSurface(16 + 1, true);
+    try {
+      for (int i = 0; i < FRAMES; i++) {
+        surface.getTileScheduler().update();
+      }
+      assertEquals(FRAMES, surface.getCellAt(3, 3).getWrites());
+      assertEquals("A neighbor wasn't written yet", 0, surface.getMismatches());
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+  /**
+   * The slow thread sleeps in the first phase, the other thread waits for it
+   * between the phases. Waiting isn't counted as work so the regions can be
+   * balanced on the time each thread really spent.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void phaseWaitNotWorkTest() throws Exception {
+    Phaser phaser = new Phaser(2);
+    MThread slow = new MThread(0, new Boundaries(0, 1, 0, 1));
+    MThread fast = new MThread(0, new Boundaries(1, 2, 0, 1));
+    slow.setPhases(phaser, 2);
+    fast.setPhases(phaser, 2);
+    slow.addTask(new SleepTask(50));
+    fast.addTask(new SleepTask(0));
+    Thread other = new Thread(() -> {
+      try {
+        fast.update();
+      } catch (Exception e) {
+        throw new RuntimeException(e);
+      }
+    });
+    other.start();
+    slow.update();
+    other.join();
+    assertTrue(slow.workNanos() >= TimeUnit.MILLISECONDS.toNanos(50));
+    assertTrue("Counted " + fast.workNanos() + " ns of waiting",
+            fast.workNanos() < TimeUnit.MILLISECONDS.toNanos(25));
+  }
+
+}
+
+class SleepTask extends TaskAdapter {
+
+  private final long milliseconds;
+
+  public SleepTask(long milliseconds) {
+    this.milliseconds = milliseconds;
+  }
+
+  @Override
+  public void before() {
+  }
+
+  @Override
+  public void perform(int x, int y) {
+  }
+
+  @Override
+  public void after() throws InterruptedException {
+    Thread.sleep(milliseconds);
+  }
+}
+
+class PhaseTestSurface extends SurfaceMap<PhaseTestCell> {
+
+  private final AtomicInteger mismatches;
+  private final CountDownLatch frames;
+
+  public PhaseTestSurface(int totalSize, boolean tiled) {
+    super(totalSize, 0);
+    mismatches = new AtomicInteger();
+    frames = new CountDownLatch(FramePhaseTest.FRAMES);
+    if (tiled) {
+      setupTiledThreads(3, 0);
+    } else {
+      setupThreads(2, 0);
+    }
+    setupArrayMap();
+    buildMap();
+    produceTasks(() -> new TaskAdapter() {
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+        getCellAt(x, y).write();
+      }
+
+      @Override
+      public void after() {
+      }
+    });
+    produceTasks(() -> new TaskAdapter() {
+      {
+        phase = 1;
+      }
+
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+        int writes = getCellAt(x, y).getWrites();
+        forEachNeighbor(x, y, index -> {
+          if (getCellAt(index).getWrites() != writes) {
+            mismatches.incrementAndGet();
+          }
+        });
+      }
+
+      @Override
+      public void after() {
+        if (getThread() == threadReferences.get(0)) {
+          frames.countDown();
+        }
+      }
+    });
+    setupPhases(2);
+  }
+
+  public boolean awaitFrames() throws InterruptedException {
+    return frames.await(10, TimeUnit.SECONDS);
+  }
+
+  public int getMismatches() {
+    return mismatches.get();
+  }
+
+  @Override
+  public void reset() {
+  }
+
+  @Override
+  public PhaseTestCell generateCell(int x, int y) {
+    return new PhaseTestCell(x, y);
+  }
+}
+
+class PhaseTestCell extends Cell {
+
+  private volatile int writes;
+
+  public PhaseTestCell(int x, int y) {
+    super(x, y);
+  }
+
+  public void write() {
+    writes++;
+  }
+
+  public int getWrites() {
+    return writes;
+  }
+}
@@ -0,0 +1,120 @@
+
+import engine.surface.ArrayFieldStore;
+import engine.surface.Cell;
+import engine.surface.FieldStore;
+import engine.surface.HaloField;
+import engine.surface.SurfaceMap;
+import engine.util.concurrent.MThread;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the regions and halos of a HaloField on a surface split between four
+ * threads.
+ *
+ * @author Richard DeSilvey
+ */
+public class HaloFieldTest {
+
+  private static final int FIELD = 0, WIDTH = 8;
+
+  private HaloTestSurface surface;
+  private FieldStore store;
+  private HaloField halo;
+
+  @Before
+  public void setUp() {
+    surface = new HaloTestSurface(WIDTH + 1);
+    surface.reset();
+    store = surface.getFieldStore();
+    for (int y = 0; y < WIDTH; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        store.set(FIELD, surface.calcIndex(x, y), valueAt(x, y));
+      }
+    }
+    halo = surface.haloField(FIELD, 1);
+  }
+
+  @After
+  public void tearDown() {
+    surface.killAllThreads();
+  }
+
+  private static float valueAt(int x, int y) {
+    return (y * WIDTH) + x;
+  }
+
+  @Test
+  public void interiorAndHaloTest() {
+    for (MThread thread : surface.getThreads()) {
+      HaloField.Region region = halo.getRegion(thread);
+      int lowerX = thread.getManager().getBounds().getLowerXBound();
+      int lowerY = thread.getManager().getBounds().getLowerYBound();
+      for (int y = lowerY - 1; y <= lowerY + (WIDTH / 2); y++) {
+        for (int x = lowerX - 1; x <= lowerX + (WIDTH / 2); x++) {
+          float expected = valueAt(Math.floorMod(x, WIDTH), Math.floorMod(y, WIDTH));
+          assertEquals("Wrong value at " + x + ", " + y, expected, region.get(x, y), 0f);
+        }
+      }
+    }
+  }
+
+  /**
+   * A change to the store is only seen in a neighboring halo after the owning
+   * thread captures it and the halos are exchanged.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void exchangeTest() throws Exception {
+    MThread first = surface.getThreads().get(0);
+    MThread second = surface.getThreads().get(1);
+    int x = (WIDTH / 2) - 1, y = 0;
+    store.set(FIELD, surface.calcIndex(x, y), -1f);
+
+    halo.exchange();
+    assertEquals(valueAt(x, y), halo.getRegion(second).get(x, y), 0f);
+
+    halo.captureTask(first).perform(x, y);
+    halo.exchange();
+    assertEquals(-1f, halo.getRegion(first).get(x, y), 0f);
+    assertEquals(-1f, halo.getRegion(second).get(x, y), 0f);
+  }
+
+}
+
+class HaloTestSurface extends SurfaceMap<HaloTestCell> {
+
+  public HaloTestSurface(int totalSize) {
+    super(totalSize, 1);
+    setupThreads(2, 1);
+    setupArrayMap();
+    setupFieldStore(ArrayFieldStore::new, "Value");
+  }
+
+  public List<MThread> getThreads() {
+    return threadReferences;
+  }
+
+  @Override
+  public void reset() {
+    buildMap();
+  }
+
+  @Override
+  public HaloTestCell generateCell(int x, int y) {
+    return new HaloTestCell(x, y);
+  }
+
+}
+
+class HaloTestCell extends Cell {
+
+  public HaloTestCell(int x, int y) {
+    super(x, y);
+  }
+
+}
@@ -0,0 +1,163 @@
+import engine.surface.ArrayFieldStore;
+import engine.surface.HaloField;
+import engine.util.task.Boundaries;
+import engine.util.task.Task;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import worlds.planet.PlanetSurface;
+import worlds.planet.TestWorld;
+import worlds.planet.geosphere.GeoCell;
+import worlds.planet.geosphere.Layer;
+import worlds.planet.geosphere.LayerMaterial;
+import worlds.planet.geosphere.tasks.MantleConduction;
+import worlds.planet.geosphere.tasks.MantleRadiation;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that the array kernels of the mantle tasks give the same temperatures
+ * as performing each cell on it's own.
+ *
+ * @author Richard DeSilvey
+ */
+public class MantleKernelTest {
+
+  private TestWorld world;
+  private PlanetSurface surface;
+  private float[] temps;
+  private Boundaries bounds;
+
+  @Before
+  public void setUp() throws Exception {
+    world = new TestWorld(16, 1);
+    surface = world.getSurface();
+    // The parent threads are set on the first frame
+    long deadline = System.currentTimeMillis() + 10000;
+    while (surface.getCellAt(0, 0).getParentThread() == null) {
+      assertTrue("The first frame never ran", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+    world.pause();
+    Thread.sleep(200);
+    temps = ((ArrayFieldStore) surface.getFieldStore()).getColumn(GeoCell.MANTLE_TEMPERATURE);
+    int width = surface.getTerrainSize();
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        temps[surface.calcIndex(x, y)] = 500 + ((x * 7 + y * 13) % 40) * 50;
+      }
+    }
+    bounds = new Boundaries(0, width, 0, width);
+  }
+
+  @After
+  public void tearDown() {
+    world.shutdown();
+  }
+
+  /**
+   * The specific heat field follows the average of the strata as layers are
+   * added to and removed from either end.
+   */
+  @Test
+  public void specificHeatFieldTest() {
+    GeoCell cell = surface.getCellAt(3, 4);
+    float[] specificHeat = ((ArrayFieldStore) surface.getFieldStore()).getColumn(GeoCell.SPECIFIC_HEAT);
+    int index = surface.calcIndex(3, 4);
+    float start = specificHeat[index];
+    assertEquals(averageSpecificHeat(cell), start, 1e-6f);
+
+    cell.pushRockLayer(layer(0.9f));
+    cell.appendRockLayer(layer(0.6f));
+    assertEquals(averageSpecificHeat(cell), specificHeat[index], 1e-6f);
+    assertEquals(specificHeat[index], cell.getSpecificHeat(), 0);
+
+    cell.removeTopRockLayer();
+    cell.removeBottomRockLayer();
+    assertEquals(start, specificHeat[index], 1e-6f);
+  }
+
+  /**
+   * An emptied layer has no specific heat, the cell should only report NaN
+   * while that layer is in the strata.
+   */
+  @Test
+  public void emptiedLayerTest() {
+    GeoCell cell = surface.getCellAt(3, 4);
+    float start = cell.getSpecificHeat();
+    Layer emptied = layer(0.9f);
+    emptied.removeMaterial(Float.MAX_VALUE);
+    assertTrue(Float.isNaN(emptied.getSpecificHeat()));
+
+    cell.pushRockLayer(emptied);
+    assertTrue(Float.isNaN(cell.getSpecificHeat()));
+    cell.removeTopRockLayer();
+    assertEquals(start, cell.getSpecificHeat(), 1e-6f);
+  }
+
+  /**
+   * Adding and removing layers many times shouldn't move the average away
+   * from the average of the layers left in the strata.
+   */
+  @Test
+  public void specificHeatDriftTest() {
+    GeoCell cell = surface.getCellAt(3, 4);
+    for (int i = 0; i < 10000; i++) {
+      cell.pushRockLayer(layer(0.1f + (i % 7) * 0.13f));
+      cell.appendRockLayer(layer(0.05f + (i % 11) * 0.09f));
+      if (i % 3 != 0) {
+        cell.removeTopRockLayer();
+      }
+    }
+    assertEquals(averageSpecificHeat(cell), cell.getSpecificHeat(), 1e-6f);
+  }
+
+  private static float averageSpecificHeat(GeoCell cell) {
+    double sum = 0;
+    for (Layer layer : cell.getStrata()) {
+      sum += layer.getSpecificHeat();
+    }
+    return (float) (sum / cell.getStrata().size());
+  }
+
+  private static Layer layer(float specificHeat) {
+    Layer layer = new Layer();
+    layer.addMaterial(new LayerMaterial("Test", 1000, specificHeat, 1.2f, 1, null));
+    return layer;
+  }
+
+  @Test
+  public void radiationTest() throws Exception {
+    MantleRadiation radiation = new MantleRadiation(surface);
+    assertTrue(radiation.performsBounds());
+    assertKernelMatches(radiation);
+  }
+
+  @Test
+  public void conductionTest() throws Exception {
+    HaloField halo = surface.haloField(GeoCell.MANTLE_TEMPERATURE, 1);
+    MantleConduction conduction = new MantleConduction(surface, halo);
+    conduction.setThread(surface.getCellAt(0, 0).getParentThread());
+    conduction.before();
+    assertKernelMatches(conduction);
+
+    surface.getContext().setArrayKernels(false);
+    assertFalse(conduction.performsBounds());
+  }
+
+  private void assertKernelMatches(Task task) throws Exception {
+    float[] start = temps.clone();
+    for (int y = bounds.getLowerYBound(); y < bounds.getUpperYBound(); y++) {
+      for (int x = bounds.getLowerXBound(); x < bounds.getUpperXBound(); x++) {
+        task.perform(x, y);
+      }
+    }
+    float[] scalar = temps.clone();
+    assertFalse("The task didn't change any temperature", Arrays.equals(start, scalar));
+
+    System.arraycopy(start, 0, temps, 0, temps.length);
+    task.performBounds(bounds);
+    assertArrayEquals(scalar, temps, 0);
+  }
+
+}
@@ -0,0 +1,99 @@
+
+import engine.surface.Cell;
+import engine.surface.SurfaceMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests that building a map in parallel produces the same cells as building
+ * it on one thread.
+ *
+ * @author Richard DeSilvey
+ */
+public class ParallelBuildTest {
+
+  private static final int SIZE = 32 + 1;
+  private static final long SEED = 42;
+
+  @Test
+  public void parallelMatchesSerialTest() {
+    RandomTestSurface serial = buildSurface(false);
+    RandomTestSurface parallel = buildSurface(true);
+
+    int width = serial.getTerrainSize();
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        RandomTestCell serialCell = serial.getCellAt(x, y);
+        RandomTestCell parallelCell = parallel.getCellAt(x, y);
+        assertEquals(x, parallelCell.getX());
+        assertEquals(y, parallelCell.getY());
+        assertEquals(serialCell.getValue(), parallelCell.getValue());
+      }
+    }
+  }
+
+  @Test
+  public void seedChangesMapTest() {
+    RandomTestSurface first = buildSurface(true);
+    RandomTestSurface second = new RandomTestSurface(SIZE);
+    second.setSeed(SEED + 1);
+    second.reset();
+
+    int same = 0, width = first.getTerrainSize();
+    for (int i = 0; i < width; i++) {
+      if (first.getCellAt(i, i).getValue() == second.getCellAt(i, i).getValue()) {
+        same++;
+      }
+    }
+    assertTrue("A different seed should build a different map", same < width);
+  }
+
+  @Test
+  public void neighboringRowsDifferTest() {
+    RandomTestSurface surface = buildSurface(true);
+    assertNotEquals(surface.getCellAt(0, 0).getValue(), surface.getCellAt(0, 1).getValue());
+  }
+
+  private RandomTestSurface buildSurface(boolean parallel) {
+    RandomTestSurface surface = new RandomTestSurface(SIZE);
+    surface.setParallelBuild(parallel);
+    surface.setSeed(SEED);
+    surface.reset();
+    return surface;
+  }
+
+}
+
+class RandomTestSurface extends SurfaceMap<RandomTestCell> {
+
+  public RandomTestSurface(int totalSize) {
+    super(totalSize, 1);
+    setupArrayMap();
+  }
+
+  @Override
+  public void reset() {
+    buildMap();
+  }
+
+  @Override
+  public RandomTestCell generateCell(int x, int y) {
+    return new RandomTestCell(x, y, SurfaceMap.random().nextInt());
+  }
+
+}
+
+class RandomTestCell extends Cell {
+
+  private final int value;
+
+  public RandomTestCell(int x, int y, int value) {
+    super(x, y);
+    this.value = value;
+  }
+
+  public int getValue() {
+    return value;
+  }
+
+}
@@ -0,0 +1,117 @@
+import engine.util.concurrent.MThread;
+import engine.util.task.TaskAdapter;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import worlds.planet.PlanetContext;
+import worlds.planet.PlanetSurface;
+import worlds.planet.TestWorld;
+import worlds.planet.geosphere.GeoCell;
+import static org.junit.Assert.*;
+
+/**
+ * Tests running several planets with their own contexts in one process.
+ *
+ * @author Richard DeSilvey
+ */
+public class PlanetContextTest {
+
+  /**
+   * Two planets with different cell sizes share a pool of two workers. Each
+   * keeps it's own cell size and ages by it's own frames.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void sharedPoolTest() throws Exception {
+    ForkJoinPool pool = new ForkJoinPool(2);
+    PlanetContext large = new PlanetContext(100000, pool, 8);
+    PlanetContext small = new PlanetContext(1000, pool, 8);
+    small.setTimeStep(10);
+    assertEquals(10000000000L, large.getCellArea());
+    assertEquals(1000000L, small.getCellArea());
+    TestWorld first = new TestWorld(large, 16, 1);
+    TestWorld second = new TestWorld(small, 16, 1);
+    try {
+      first.pause();
+      second.pause();
+      Thread.sleep(200);
+      long firstAge = first.getSurface().getPlanetAge();
+      long secondAge = second.getSurface().getPlanetAge();
+
+      first.step(5);
+      second.step(9);
+      assertEquals(firstAge + (5 * PlanetContext.DEFAULT_TIME_STEP), first.getSurface().getPlanetAge());
+      assertEquals(secondAge + (9 * 10), second.getSurface().getPlanetAge());
+
+      // The strata are sized by the area of the cell, the height isn't
+      GeoCell firstCell = first.getSurface().getCellAt(3, 3);
+      GeoCell secondCell = second.getSurface().getCellAt(3, 3);
+      assertTrue(firstCell.getTotalMass() > secondCell.getTotalMass() * 100);
+      assertEquals(firstCell.getHeight(), secondCell.getHeight(), 1e-3f);
+    } finally {
+      first.shutdown();
+      second.shutdown();
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * A planet laid out in tiles stores the cells of each tile together and
+   * still runs.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void tiledLayoutTest() throws Exception {
+    PlanetContext context = new PlanetContext(1000);
+    context.setLayoutTileSize(8);
+    TestWorld world = new TestWorld(context, 16, 2);
+    try {
+      PlanetSurface surface = world.getSurface();
+      assertEquals(8 * 8, surface.calcIndex(8, 0));
+      assertEquals(1, surface.calcIndex(1, 0));
+      long age = surface.getPlanetAge();
+      world.step(3);
+      assertTrue(surface.getPlanetAge() > age);
+    } finally {
+      world.shutdown();
+    }
+  }
+
+  /**
+   * A context with a thread count splits the surface into exactly that many
+   * threads, even when it isn't a square number.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void threadCountTest() throws Exception {
+    PlanetContext context = new PlanetContext(1000);
+    context.setThreadCount(6);
+    TestWorld world = new TestWorld(context, 16, 2);
+    Set<MThread> threads = ConcurrentHashMap.newKeySet();
+    try {
+      world.getSurface().produceTasks(() -> new TaskAdapter() {
+        @Override
+        public void before() {
+        }
+
+        @Override
+        public void perform(int x, int y) {
+          threads.add(getThread());
+        }
+
+        @Override
+        public void after() {
+        }
+      });
+      world.step(2);
+      assertEquals(6, threads.size());
+    } finally {
+      world.shutdown();
+    }
+  }
+
+}
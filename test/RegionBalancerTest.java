@@ -0,0 +1,163 @@
+import engine.surface.ArrayFieldStore;
+import engine.surface.Cell;
+import engine.surface.HaloField;
+import engine.surface.RegionBalancer;
+import engine.surface.SurfaceMap;
+import engine.util.concurrent.MThread;
+import engine.util.task.Boundaries;
+import engine.util.task.TaskAdapter;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests moving the borders of the thread regions so each thread spends about
+ * the same time on it's tasks.
+ *
+ * @author Richard DeSilvey
+ */
+public class RegionBalancerTest {
+
+  @Test
+  public void equalCostsTest() {
+    int[] bounds = {0, 4, 8, 12, 16};
+    assertArrayEquals(bounds, RegionBalancer.balance(bounds, new long[]{5, 5, 5, 5}));
+    assertArrayEquals(bounds, RegionBalancer.balance(bounds, new long[]{0, 0, 0, 0}));
+  }
+
+  /**
+   * All of the time is spent in the first region so half of it's cells hold
+   * half of the cost and the balanced border is at 4. The border only moves
+   * half of the way there.
+   */
+  @Test
+  public void costlyRegionShrinksTest() {
+    int[] balanced = RegionBalancer.balance(new int[]{0, 8, 16}, new long[]{40, 0});
+    assertArrayEquals(new int[]{0, 6, 16}, balanced);
+    balanced = RegionBalancer.balance(new int[]{0, 8, 16}, new long[]{30, 10});
+    assertTrue(balanced[1] < 8);
+  }
+
+  /**
+   * The balanced border is at 32, half of the way there is 16 cells away but
+   * the border only moves MAX_STEP cells.
+   */
+  @Test
+  public void borderStepLimitTest() {
+    int[] balanced = RegionBalancer.balance(new int[]{0, 64, 128}, new long[]{1000, 0});
+    assertArrayEquals(new int[]{0, 64 - RegionBalancer.MAX_STEP, 128}, balanced);
+    balanced = RegionBalancer.balance(new int[]{0, 64, 128}, new long[]{0, 1000});
+    assertArrayEquals(new int[]{0, 64 + RegionBalancer.MAX_STEP, 128}, balanced);
+  }
+
+  @Test
+  public void regionsKeepOneCellTest() {
+    int[] balanced = {0, 2, 4, 6};
+    for (int i = 0; i < 10; i++) {
+      balanced = RegionBalancer.balance(balanced, new long[]{0, 1000, 0});
+    }
+    assertEquals(0, balanced[0]);
+    assertEquals(6, balanced[3]);
+    for (int i = 0; i < 3; i++) {
+      assertTrue("A region is empty", balanced[i + 1] > balanced[i]);
+    }
+  }
+
+  /**
+   * The left thread sleeps each frame, the border between the two threads
+   * should move left and the cells and halo regions follow it.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void surfaceRebalanceTest() throws Exception {
+    BalanceTestSurface surface = new BalanceTestSurface(16 + 1);
+    try {
+      MThread left = surface.getThreads().get(0);
+      Boundaries bounds = left.getManager().getBounds();
+      surface.startThreads();
+      surface.playThreads();
+      long deadline = System.currentTimeMillis() + 10000;
+      while (bounds.getUpperXBound() > 4 && System.currentTimeMillis() < deadline) {
+        Thread.sleep(20);
+      }
+      surface.setRebalanceInterval(0);
+      surface.pauseThreads();
+      Thread.sleep(200);
+      assertTrue("The border never moved", bounds.getUpperXBound() <= 4);
+
+      int width = surface.getTerrainSize();
+      for (MThread thread : surface.getThreads()) {
+        Boundaries b = thread.getManager().getBounds();
+        assertEquals(0, b.getLowerYBound());
+        assertEquals(width, b.getUpperYBound());
+        for (int x = b.getLowerXBound(); x < b.getUpperXBound(); x++) {
+          assertSame(thread, surface.getCellAt(x, 3).getParentThread());
+        }
+        HaloField.Region region = surface.getHalo().getRegion(thread);
+        assertEquals(b.getUpperXBound() - b.getLowerXBound() + 2, region.getStride());
+      }
+      assertEquals(width, surface.getThreads().get(1).getManager().getBounds().getUpperXBound());
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+}
+
+class BalanceTestSurface extends SurfaceMap<BalanceTestCell> {
+
+  private final HaloField halo;
+
+  public BalanceTestSurface(int totalSize) {
+    super(totalSize, 0);
+    setupThreads(2, 1, 0);
+    setupArrayMap();
+    setupFieldStore(ArrayFieldStore::new, "Value");
+    buildMap();
+    halo = haloField(0, 1);
+    produceTasks(() -> new TaskAdapter() {
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+      }
+
+      @Override
+      public void after() throws Exception {
+        if (getThread().getManager().getBounds().getLowerXBound() == 0) {
+          Thread.sleep(10);
+        }
+      }
+    });
+    setRebalanceInterval(1);
+  }
+
+  public List<MThread> getThreads() {
+    return threadReferences;
+  }
+
+  public HaloField getHalo() {
+    return halo;
+  }
+
+  @Override
+  public void reset() {
+  }
+
+  @Override
+  public BalanceTestCell generateCell(int x, int y) {
+    return new BalanceTestCell(x, y);
+  }
+
+}
+
+class BalanceTestCell extends Cell {
+
+  public BalanceTestCell(int x, int y) {
+    super(x, y);
+  }
+
+}
@@ -0,0 +1,119 @@
+import engine.surface.ArrayFieldStore;
+import engine.surface.Cell;
+import engine.surface.FieldStore;
+import engine.surface.SnapshotPublisher;
+import engine.surface.SurfaceMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests publishing triple-buffered snapshots of a field.
+ *
+ * @author Richard DeSilvey
+ */
+public class SnapshotPublisherTest {
+
+  private static final int FIELD = 0, WIDTH = 8;
+
+  private SnapshotTestSurface surface;
+  private FieldStore store;
+  private SnapshotPublisher publisher;
+
+  @Before
+  public void setUp() {
+    surface = new SnapshotTestSurface(WIDTH + 1);
+    surface.reset();
+    store = surface.getFieldStore();
+    setAll(1);
+    publisher = surface.snapshot(FIELD);
+  }
+
+  @After
+  public void tearDown() {
+    surface.killAllThreads();
+  }
+
+  private void setAll(float value) {
+    for (int y = 0; y < WIDTH; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        store.set(FIELD, surface.calcIndex(x, y), value + (y * WIDTH) + x);
+      }
+    }
+  }
+
+  private void captureAll() {
+    for (int y = 0; y < WIDTH; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        publisher.capture(x, y);
+      }
+    }
+  }
+
+  @Test
+  public void filledSnapshotTest() {
+    assertTrue(publisher.hasNewSnapshot());
+    float[] values = publisher.acquire();
+    assertEquals(WIDTH * WIDTH, values.length);
+    assertEquals(1 + (3 * WIDTH) + 5, values[(3 * WIDTH) + 5], 0f);
+    assertFalse(publisher.hasNewSnapshot());
+    assertSame(values, publisher.acquire());
+  }
+
+  /**
+   * The snapshot the reader holds is never written while newer frames are
+   * captured and published, and the reader always gets the newest one.
+   */
+  @Test
+  public void readerKeepsSnapshotTest() {
+    float[] held = publisher.acquire();
+    long heldFrame = publisher.acquiredFrame();
+
+    setAll(100);
+    captureAll();
+    publisher.publish();
+    setAll(200);
+    captureAll();
+    publisher.publish();
+    setAll(300);
+    captureAll();
+
+    assertEquals(1, held[0], 0f);
+    float[] newest = publisher.acquire();
+    assertNotSame(held, newest);
+    assertEquals(200, newest[0], 0f);
+    assertEquals(heldFrame + 2, publisher.acquiredFrame());
+  }
+
+}
+
+class SnapshotTestSurface extends SurfaceMap<SnapshotTestCell> {
+
+  public SnapshotTestSurface(int totalSize) {
+    super(totalSize, 1);
+    setTiledLayout(4);
+    setupThreads(2, 1);
+    setupArrayMap();
+    setupFieldStore(ArrayFieldStore::new, "Value");
+  }
+
+  @Override
+  public void reset() {
+    buildMap();
+  }
+
+  @Override
+  public SnapshotTestCell generateCell(int x, int y) {
+    return new SnapshotTestCell(x, y);
+  }
+
+}
+
+class SnapshotTestCell extends Cell {
+
+  public SnapshotTestCell(int x, int y) {
+    super(x, y);
+  }
+
+}
@@ -0,0 +1,196 @@
+import engine.surface.ArrayFieldStore;
+import engine.surface.Cell;
+import engine.surface.SnapshotPublisher;
+import engine.surface.SurfaceMap;
+import engine.util.concurrent.TaskRunner;
+import engine.util.task.TaskAdapter;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import worlds.planet.TestWorld;
+import static org.junit.Assert.*;
+
+/**
+ * Tests running a surface through an exact number of frames.
+ *
+ * @author Richard DeSilvey
+ */
+public class StepTest {
+
+  @Test
+  public void threadStepTest() throws Exception {
+    StepTestSurface surface = new StepTestSurface(16 + 1, false);
+    try {
+      surface.startThreads();
+      surface.step(25);
+      assertEquals(25, surface.getFrames());
+      assertEquals(25, surface.getCellAt(0, 0).getUpdates());
+      assertEquals(25, surface.getCellAt(15, 15).getUpdates());
+
+      surface.step(10);
+      assertEquals(35, surface.getFrames());
+      assertEquals(35, surface.getCellAt(15, 0).getUpdates());
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+  @Test
+  public void tileStepTest() throws Exception {
+    StepTestSurface surface = new StepTestSurface(16 + 1, true);
+    try {
+      surface.step(12);
+      assertEquals(12, surface.getFrames());
+      assertEquals(12, surface.getCellAt(9, 14).getUpdates());
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+  /**
+   * Stepping a surface that is already running stops every thread after the
+   * same frame, over and over again.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void stepRunningSurfaceTest() throws Exception {
+    StepTestSurface surface = new StepTestSurface(16 + 1, false);
+    try {
+      surface.setThreadsPacing(TaskRunner.Pacing.UNTHROTTLED);
+      surface.startThreads();
+      surface.playThreads();
+      for (int i = 0; i < 100; i++) {
+        surface.step(3);
+        int frames = surface.getFrames();
+        assertEquals(frames, surface.getCellAt(0, 0).getUpdates());
+        assertEquals(frames, surface.getCellAt(15, 15).getUpdates());
+      }
+      int frames = surface.getFrames();
+      Thread.sleep(100);
+      assertEquals("The surface kept running", frames, surface.getFrames());
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+  /**
+   * The snapshot of the last frame is published before step() returns, and
+   * isn't published a second time when the threads carry on.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void stepCommitsLastFrameTest() throws Exception {
+    StepTestSurface surface = new StepTestSurface(16 + 1, false);
+    try {
+      surface.startThreads();
+      surface.step(4);
+      float[] snapshot = surface.getSnapshot().acquire();
+      assertEquals(4, snapshot[surface.calcIndex(3, 3)], 0);
+      assertEquals(4, snapshot[surface.calcIndex(12, 9)], 0);
+
+      surface.step(2);
+      snapshot = surface.getSnapshot().acquire();
+      assertEquals(6, snapshot[surface.calcIndex(3, 3)], 0);
+      assertEquals(6, snapshot[surface.calcIndex(12, 9)], 0);
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+  /**
+   * A planet is free running after it's built, running until an age leaves
+   * it paused at or past that age.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void runUntilTest() throws Exception {
+    TestWorld world = new TestWorld(16, 2);
+    try {
+      long target = world.getSurface().getPlanetAge() + (20 * world.getContext().getTimeStep());
+      world.runUntil(target);
+      long age = world.getSurface().getPlanetAge();
+      assertTrue("The planet is too young", age >= target);
+      Thread.sleep(100);
+      assertEquals("The planet kept running", age, world.getSurface().getPlanetAge());
+    } finally {
+      world.shutdown();
+    }
+  }
+
+}
+
+class StepTestSurface extends SurfaceMap<StepTestCell> {
+
+  private final AtomicInteger frames;
+  private final SnapshotPublisher snapshot;
+
+  public StepTestSurface(int totalSize, boolean tiled) {
+    super(totalSize, 50);
+    frames = new AtomicInteger();
+    if (tiled) {
+      setupTiledThreads(4, 50);
+    } else {
+      setupThreads(2, 50);
+    }
+    setupArrayMap();
+    setupFieldStore(ArrayFieldStore::new, "Updates");
+    buildMap();
+    snapshot = snapshot(0);
+    produceTasks(() -> new TaskAdapter() {
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+        getCellAt(x, y).update();
+        getFieldStore().add(0, calcIndex(x, y), 1);
+      }
+
+      @Override
+      public void after() {
+      }
+    });
+  }
+
+  @Override
+  protected void onFrame() {
+    frames.incrementAndGet();
+  }
+
+  public int getFrames() {
+    return frames.get();
+  }
+
+  public SnapshotPublisher getSnapshot() {
+    return snapshot;
+  }
+
+  @Override
+  public void reset() {
+  }
+
+  @Override
+  public StepTestCell generateCell(int x, int y) {
+    return new StepTestCell(x, y);
+  }
+}
+
+class StepTestCell extends Cell {
+
+  private volatile int updates;
+
+  public StepTestCell(int x, int y) {
+    super(x, y);
+  }
+
+  public void update() {
+    updates++;
+  }
+
+  public int getUpdates() {
+    return updates;
+  }
+}
@@ -242,8 +242,9 @@ class TestCell extends Cell {
   }
 
   public void update() {
-    latch.countDown();
+    // Flagged before counting down so the test sees it once the latch opens
     updated = true;
+    latch.countDown();
     try {
       Thread.sleep(250);
     } catch (InterruptedException e) {
@@ -0,0 +1,183 @@
+import engine.util.task.Boundaries;
+import engine.util.task.Task;
+import engine.util.task.TaskManager;
+import engine.util.task.Traversal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests fusing runs of fusable tasks into a single sweep over the cells.
+ *
+ * @author Richard DeSilvey
+ */
+public class TaskFusionTest {
+
+  @Test
+  public void unitsTest() {
+    TaskManager manager = new TaskManager(new Boundaries(0, 2, 0, 1));
+    List<String> log = new ArrayList<>();
+    LoggingTask c = new LoggingTask("c", false, log);
+    LoggingTask d = new LoggingTask("d", true, log);
+    manager.addTask(new LoggingTask("a", true, log));
+    manager.addTask(new LoggingTask("b", true, log));
+    manager.addTask(c);
+    manager.addTask(d);
+    List<Task> units = manager.getUnits();
+    assertEquals(3, units.size());
+    assertSame(c, units.get(1));
+    assertSame(d, units.get(2));
+  }
+
+  /**
+   * Tasks are added by another thread while the manager's thread keeps
+   * building the units, every task added ends up in them.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void addWhileRunningTest() throws Exception {
+    TaskManager manager = new TaskManager(new Boundaries(0, 2, 0, 1));
+    List<String> log = new ArrayList<>();
+    int count = 2000;
+    Thread adder = new Thread(() -> {
+      for (int i = 0; i < count; i++) {
+        manager.addTask(new LoggingTask("t" + i, false, log));
+      }
+    });
+    adder.start();
+    while (adder.isAlive()) {
+      manager.getUnits();
+      manager.getGraph();
+    }
+    adder.join();
+    assertEquals(count, manager.getUnits().size());
+    assertEquals(count, manager.getGraph().getLevels().stream().mapToInt(List::size).sum());
+  }
+
+  /**
+   * The fused tasks call before() on each task, perform each task on a cell
+   * before moving to the next cell then call after() on each task. A task
+   * that skips the frame is left out of the sweep.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void fusedOrderTest() throws Exception {
+    TaskManager manager = new TaskManager(new Boundaries(0, 2, 0, 1));
+    List<String> log = new ArrayList<>();
+    LoggingTask skipped = new LoggingTask("s", true, log);
+    skipped.skip = true;
+    manager.addTask(new LoggingTask("a", true, log));
+    manager.addTask(skipped);
+    manager.addTask(new LoggingTask("b", true, log));
+    manager.addTask(new LoggingTask("c", false, log));
+    manager.performTasks();
+
+    assertEquals(Arrays.asList(
+            "a before", "b before",
+            "a 0", "b 0", "a 1", "b 1",
+            "a after", "b after",
+            "c before", "c 0", "c 1", "c after"), log);
+  }
+
+  /**
+   * A task that performs it's bounds at once splits the sweep, the tasks
+   * before it finish every cell first.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void boundsSplitSweepTest() throws Exception {
+    TaskManager manager = new TaskManager(new Boundaries(0, 2, 0, 1));
+    List<String> log = new ArrayList<>();
+    LoggingTask whole = new LoggingTask("b", true, log);
+    whole.bounds = true;
+    manager.addTask(new LoggingTask("a", true, log));
+    manager.addTask(whole);
+    manager.addTask(new LoggingTask("c", true, log));
+    manager.performTasks();
+
+    assertEquals(Arrays.asList(
+            "a before", "b before", "c before",
+            "a 0", "a 1", "b bounds", "c 0", "c 1",
+            "a after", "b after", "c after"), log);
+  }
+
+  /**
+   * A task with it's own traversal visits the cells in it's own order and
+   * isn't fused with tasks using the manager's traversal.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void ownTraversalTest() throws Exception {
+    TaskManager manager = new TaskManager(new Boundaries(0, 2, 0, 2));
+    List<String> log = new ArrayList<>();
+    LoggingTask hilbert = new LoggingTask("b", true, log);
+    hilbert.setTraversal(Traversal.HILBERT);
+    manager.addTask(new LoggingTask("a", true, log));
+    manager.addTask(hilbert);
+    assertEquals(2, manager.getUnits().size());
+
+    manager.performTasks();
+    assertEquals(Arrays.asList(
+            "a before", "a 0", "a 1", "a 0", "a 1", "a after",
+            "b before", "b 0", "b 0", "b 1", "b 1", "b after"), log);
+  }
+
+}
+
+class LoggingTask extends Task {
+
+  private final String name;
+  private final List<String> log;
+  boolean skip, bounds;
+
+  public LoggingTask(String name, boolean fusable, List<String> log) {
+    this.name = name;
+    this.fusable = fusable;
+    this.log = log;
+  }
+
+  public void setTraversal(Traversal traversal) {
+    this.traversal = traversal;
+  }
+
+  @Override
+  public void construct() {
+  }
+
+  @Override
+  public boolean check() {
+    return !skip;
+  }
+
+  @Override
+  public void before() {
+    log.add(name + " before");
+  }
+
+  @Override
+  public void perform(int x, int y) {
+    log.add(name + " " + x);
+  }
+
+  @Override
+  public boolean performsBounds() {
+    return bounds;
+  }
+
+  @Override
+  public void performBounds(Boundaries bounds) {
+    log.add(name + " bounds");
+  }
+
+  @Override
+  public void after() {
+    log.add(name + " after");
+  }
+
+}
@@ -0,0 +1,132 @@
+import engine.util.task.Boundaries;
+import engine.util.task.Task;
+import engine.util.task.TaskAdapter;
+import engine.util.task.TaskGraph;
+import engine.util.task.TaskManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests ordering tasks by the fields they read and write.
+ *
+ * @author Richard DeSilvey
+ */
+public class TaskGraphTest {
+
+  private static final int A = 0, B = 1, C = 2;
+
+  @Test
+  public void conflictTest() {
+    assertFalse(new FieldTask(new int[]{A}, new int[]{}).conflictsWith(
+            new FieldTask(new int[]{A}, new int[]{B})));
+    assertTrue(new FieldTask(new int[]{A}, new int[]{}).conflictsWith(
+            new FieldTask(new int[]{}, new int[]{A})));
+    assertTrue(new FieldTask(new int[]{}, new int[]{C}).conflictsWith(
+            new FieldTask(new int[]{}, new int[]{C})));
+    assertTrue(new FieldTask(new int[]{A}, new int[]{}).conflictsWith(new FieldTask()));
+  }
+
+  /**
+   * Tasks that don't share fields share a level, a task that conflicts with
+   * an earlier task runs in the level after it and an undeclared task runs
+   * after everything before it.
+   */
+  @Test
+  public void levelsTest() {
+    Task writesA = new FieldTask(new int[]{}, new int[]{A});
+    Task writesB = new FieldTask(new int[]{}, new int[]{B});
+    Task readsA = new FieldTask(new int[]{A}, new int[]{C});
+    Task undeclared = new FieldTask();
+    Task readsB = new FieldTask(new int[]{B}, new int[]{});
+
+    TaskGraph graph = new TaskGraph(Arrays.asList(writesA, writesB, readsA, undeclared, readsB));
+    List<List<Task>> levels = graph.getLevels();
+    assertEquals(4, graph.getLevelCount());
+    assertEquals(Arrays.asList(writesA, writesB), levels.get(0));
+    assertEquals(Collections.singletonList(readsA), levels.get(1));
+    assertEquals(Collections.singletonList(undeclared), levels.get(2));
+    assertEquals(Collections.singletonList(readsB), levels.get(3));
+  }
+
+  /**
+   * Two independent tasks wait for each other in before(), which can only
+   * finish if the manager runs them at the same time. The conflicting task
+   * runs after both.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void concurrentLevelTest() throws Exception {
+    CyclicBarrier meet = new CyclicBarrier(2);
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    TaskManager manager = new TaskManager(new Boundaries(0, 2, 0, 2));
+    manager.setConcurrent(true);
+    manager.addTask(new MeetingTask(A, meet, order));
+    manager.addTask(new MeetingTask(B, meet, order));
+    manager.addTask(new FieldTask(new int[]{A, B}, new int[]{}) {
+      @Override
+      public void after() {
+        order.add("reader");
+      }
+    });
+    manager.performTasks();
+    assertEquals(3, order.size());
+    assertEquals("reader", order.get(2));
+  }
+
+}
+
+class FieldTask extends TaskAdapter {
+
+  public FieldTask() {
+  }
+
+  public FieldTask(int[] reads, int[] writes) {
+    reads(reads);
+    writes(writes);
+  }
+
+  @Override
+  public void before() throws Exception {
+  }
+
+  @Override
+  public void perform(int x, int y) throws Exception {
+  }
+
+  @Override
+  public void after() throws Exception {
+  }
+
+}
+
+class MeetingTask extends FieldTask {
+
+  private final CyclicBarrier meet;
+  private final List<String> order;
+  private final int field;
+
+  public MeetingTask(int field, CyclicBarrier meet, List<String> order) {
+    super(new int[]{}, new int[]{field});
+    this.field = field;
+    this.meet = meet;
+    this.order = order;
+  }
+
+  @Override
+  public void before() throws Exception {
+    meet.await(5, TimeUnit.SECONDS);
+  }
+
+  @Override
+  public void after() {
+    order.add("writer " + field);
+  }
+
+}
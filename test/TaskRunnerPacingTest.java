@@ -0,0 +1,138 @@
+
+import engine.util.concurrent.TaskRunner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the pacing modes of a TaskRunner.
+ *
+ * @author Richard DeSilvey
+ */
+public class TaskRunnerPacingTest {
+
+  /**
+   * The most time a test waits for it's frames, only reached if the runner
+   * never runs them.
+   */
+  private static final long TIMEOUT = TimeUnit.SECONDS.toNanos(10);
+
+  private CountingRunner runner;
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    runner = new CountingRunner();
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() {
+    runner.kill();
+    executor.shutdownNow();
+  }
+
+  /**
+   * Runs the runner until it finishes the given number of frames and returns
+   * the average time between the start of each frame. The bounds the tests
+   * check are loose since a loaded machine only ever makes frames late.
+   */
+  private double averageInterval(int frames) throws InterruptedException {
+    executor.submit(runner);
+    runner.play();
+    long deadline = System.nanoTime() + TIMEOUT;
+    while (runner.getFrames() < frames && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    runner.pause();
+    assertTrue("Only ran " + runner.getFrames() + " frames", runner.getFrames() >= frames);
+    return runner.averageInterval();
+  }
+
+  @Test
+  public void fixedRateTest() throws InterruptedException {
+    runner.setTargetFrameRate(40);
+    assertEquals(TaskRunner.Pacing.FIXED_RATE, runner.getPacing());
+    double interval = averageInterval(10);
+    long target = TimeUnit.MILLISECONDS.toNanos(25);
+    assertTrue("Frames every " + interval + " ns", interval >= target * 0.8);
+    assertTrue("Frames every " + interval + " ns", interval <= target * 10);
+  }
+
+  @Test
+  public void unthrottledTest() throws InterruptedException {
+    runner.setDelay(50);
+    runner.setPacing(TaskRunner.Pacing.UNTHROTTLED);
+    double interval = averageInterval(50);
+    assertTrue("Frames every " + interval + " ns",
+            interval < TimeUnit.MILLISECONDS.toNanos(25));
+  }
+
+  @Test
+  public void frameTimeTest() throws InterruptedException {
+    runner.setPacing(TaskRunner.Pacing.UNTHROTTLED);
+    runner.setWork(TimeUnit.MILLISECONDS.toNanos(2));
+    averageInterval(5);
+    assertTrue(runner.frameNanos() >= TimeUnit.MILLISECONDS.toNanos(2));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void fixedRateWithoutRateTest() {
+    runner.setPacing(TaskRunner.Pacing.FIXED_RATE);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void badFrameRateTest() {
+    runner.setTargetFrameRate(0);
+  }
+
+}
+
+class CountingRunner extends TaskRunner {
+
+  private final AtomicInteger frames;
+  private volatile long work;
+  private volatile long firstStart, lastStart;
+
+  public CountingRunner() {
+    super(1, true);
+    frames = new AtomicInteger();
+  }
+
+  public void setWork(long nanos) {
+    work = nanos;
+  }
+
+  public int getFrames() {
+    return frames.get();
+  }
+
+  /**
+   * The average time between the start of each frame so far.
+   *
+   * @return The time in nanoseconds
+   */
+  public double averageInterval() {
+    int count = frames.get();
+    return (count < 2) ? 0 : (lastStart - firstStart) / (double) (count - 1);
+  }
+
+  @Override
+  public void update() {
+    long start = System.nanoTime();
+    if (frames.get() == 0) {
+      firstStart = start;
+    }
+    lastStart = start;
+    long end = start + work;
+    while (System.nanoTime() < end) {
+    }
+    frames.incrementAndGet();
+  }
+
+}
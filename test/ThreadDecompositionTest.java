@@ -0,0 +1,89 @@
+
+import engine.surface.Cell;
+import engine.surface.SurfaceMap;
+import engine.util.concurrent.MThread;
+import engine.util.task.Boundaries;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests how a surface is split between it's threads.
+ *
+ * @author Richard DeSilvey
+ */
+public class ThreadDecompositionTest {
+
+  @Test
+  public void partitionTest() {
+    assertArrayEquals(new int[]{0, 4, 8, 11, 14}, SurfaceMap.partition(14, 4));
+    assertArrayEquals(new int[]{0, 8}, SurfaceMap.partition(8, 1));
+  }
+
+  @Test
+  public void threadGridTest() {
+    assertArrayEquals(new int[]{2, 2}, SurfaceMap.threadGrid(4));
+    assertArrayEquals(new int[]{3, 2}, SurfaceMap.threadGrid(6));
+    assertArrayEquals(new int[]{6, 4}, SurfaceMap.threadGrid(24));
+    assertArrayEquals(new int[]{7, 1}, SurfaceMap.threadGrid(7));
+  }
+
+  /**
+   * A surface 16 cells wide split between 6 threads doesn't divide evenly,
+   * every cell should still belong to exactly one thread.
+   */
+  @Test
+  public void everyCellCoveredTest() {
+    DecompositionTestSurface surface = new DecompositionTestSurface(16 + 1, 6);
+    try {
+      int width = surface.getTerrainSize();
+      int[] owners = new int[width * width];
+      List<MThread> threads = surface.getThreads();
+      assertEquals(6, threads.size());
+      for (MThread thread : threads) {
+        Boundaries b = thread.getManager().getBounds();
+        for (int y = b.getLowerYBound(); y < b.getUpperYBound(); y++) {
+          for (int x = b.getLowerXBound(); x < b.getUpperXBound(); x++) {
+            owners[surface.calcIndex(x, y)]++;
+          }
+        }
+      }
+      for (int i = 0; i < owners.length; i++) {
+        assertEquals("Cell " + i + " has the wrong number of owners", 1, owners[i]);
+      }
+    } finally {
+      surface.killAllThreads();
+    }
+  }
+
+}
+
+class DecompositionTestSurface extends SurfaceMap<DecompositionTestCell> {
+
+  public DecompositionTestSurface(int totalSize, int threadCount) {
+    super(totalSize, 1);
+    setupThreadCount(threadCount, 1);
+  }
+
+  public List<MThread> getThreads() {
+    return threadReferences;
+  }
+
+  @Override
+  public void reset() {
+  }
+
+  @Override
+  public DecompositionTestCell generateCell(int x, int y) {
+    return new DecompositionTestCell(x, y);
+  }
+
+}
+
+class DecompositionTestCell extends Cell {
+
+  public DecompositionTestCell(int x, int y) {
+    super(x, y);
+  }
+
+}
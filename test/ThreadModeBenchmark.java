@@ -0,0 +1,129 @@
+
+import engine.surface.Cell;
+import engine.surface.SurfaceMap;
+import engine.util.concurrent.TaskRunner;
+import engine.util.concurrent.ThreadMode;
+import engine.util.task.TaskAdapter;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the frame rate of a surface split into many regions when the
+ * MThreads run on platform threads and on virtual threads. This isn't part of
+ * the unit tests, run it's main method directly.
+ * <br>
+ * <code>java ThreadModeBenchmark [size] [regions per side] [seconds]</code>
+ *
+ * @author Richard DeSilvey
+ */
+public class ThreadModeBenchmark {
+
+  public static void main(String[] args) throws InterruptedException {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+    int division = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+    if (!ThreadMode.virtualThreadsAvailable()) {
+      System.out.println("Virtual threads aren't available on this runtime, "
+              + "both runs will use platform threads");
+    }
+    for (ThreadMode mode : ThreadMode.values()) {
+      double fps = run(mode, size, division, seconds);
+      System.out.printf("%-8s %d regions: %.1f frames/s%n", mode, division * division, fps);
+    }
+  }
+
+  private static double run(ThreadMode mode, int size, int division, int seconds)
+          throws InterruptedException {
+    BenchmarkSurface surface = new BenchmarkSurface(size, division, mode);
+    surface.reset();
+    surface.startThreads();
+    surface.playThreads();
+    // Warm up before counting
+    Thread.sleep(1000);
+    int start = surface.getFrames();
+    long startTime = System.nanoTime();
+    Thread.sleep(seconds * 1000L);
+    int frames = surface.getFrames() - start;
+    long elapsed = System.nanoTime() - startTime;
+    surface.killAllThreads();
+    return frames / (elapsed / 1e9);
+  }
+
+}
+
+class BenchmarkSurface extends SurfaceMap<BenchmarkCell> {
+
+  private final AtomicInteger frames;
+
+  public BenchmarkSurface(int totalSize, int division, ThreadMode mode) {
+    super(totalSize + 1, 0);
+    frames = new AtomicInteger();
+    setThreadMode(mode);
+    setupThreads(division, 0);
+    setupArrayMap();
+    setThreadsPacing(TaskRunner.Pacing.UNTHROTTLED);
+    produceTasks(() -> new TaskAdapter() {
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+        BenchmarkCell cell = getCellAt(x, y);
+        forEachNeighbor(x, y, index -> cell.add(getCellAt(index).getValue()));
+      }
+
+      @Override
+      public void after() {
+      }
+    });
+    threadReferences.get(0).addTask(new TaskAdapter() {
+      @Override
+      public void before() {
+        frames.incrementAndGet();
+      }
+
+      @Override
+      public void perform(int x, int y) {
+      }
+
+      @Override
+      public void after() {
+      }
+    });
+  }
+
+  public int getFrames() {
+    return frames.get();
+  }
+
+  @Override
+  public void reset() {
+    buildMap();
+  }
+
+  @Override
+  public BenchmarkCell generateCell(int x, int y) {
+    return new BenchmarkCell(x, y);
+  }
+
+}
+
+class BenchmarkCell extends Cell {
+
+  private float value;
+
+  public BenchmarkCell(int x, int y) {
+    super(x, y);
+    value = 1;
+  }
+
+  public float getValue() {
+    return value;
+  }
+
+  public void add(float amount) {
+    value = (value + amount) * 0.1f;
+  }
+
+}
@@ -0,0 +1,30 @@
+
+import engine.util.concurrent.ThreadMode;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the executors created for each ThreadMode. Virtual threads fall back
+ * to platform threads on runtimes without them.
+ *
+ * @author Richard DeSilvey
+ */
+public class ThreadModeTest {
+
+  @Test
+  public void executorsRunTasksTest() throws Exception {
+    for (ThreadMode mode : ThreadMode.values()) {
+      ExecutorService executor = mode.newExecutor(2);
+      try {
+        Future<Integer> result = executor.submit(() -> 1 + 1);
+        assertEquals(2, (int) result.get(5, TimeUnit.SECONDS));
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+
+import engine.surface.Cell;
+import engine.surface.SurfaceMap;
+import engine.util.concurrent.TileScheduler;
+import engine.util.task.TaskAdapter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests running a surface as tiles on a fork join pool.
+ *
+ * @author Richard DeSilvey
+ */
+public class TileSchedulerTest {
+
+  private TiledThreadTestSurface surface;
+
+  @Before
+  public void setUp() {
+    // 16 cells wide with tiles of 3 leaves clipped tiles along the far edges
+    surface = new TiledThreadTestSurface(16 + 1, 3);
+    surface.reset();
+    surface.produceTasks(() -> new TaskAdapter() {
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+        surface.getCellAt(x, y).update();
+      }
+
+      @Override
+      public void after() {
+      }
+    });
+  }
+
+  @After
+  public void tearDown() {
+    surface.killAllThreads();
+  }
+
+  @Test
+  public void tileCountTest() {
+    assertEquals(36, surface.getTileScheduler().getTiles().size());
+  }
+
+  /**
+   * Each frame should update every cell exactly once.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void everyCellUpdatedTest() throws Exception {
+    TileScheduler scheduler = surface.getTileScheduler();
+    scheduler.update();
+    scheduler.update();
+    int width = surface.getTerrainSize();
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        assertEquals("Cell " + x + ", " + y, 2, surface.getCellAt(x, y).getUpdates());
+      }
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void taskExceptionTest() throws Exception {
+    surface.addTaskToThreads(new TaskAdapter() {
+      @Override
+      public void before() {
+        throw new IllegalStateException();
+      }
+
+      @Override
+      public void perform(int x, int y) {
+      }
+
+      @Override
+      public void after() {
+      }
+    });
+    surface.getTileScheduler().update();
+  }
+
+  /**
+   * The color passes of neighboring tiles can't be kept in step.
+   */
+  @Test(expected = IllegalArgumentException.class)
+  public void coloredTaskRejectedTest() {
+    surface.addTaskToThreads(new TaskAdapter() {
+      {
+        colors = 2;
+      }
+
+      @Override
+      public void before() {
+      }
+
+      @Override
+      public void perform(int x, int y) {
+      }
+
+      @Override
+      public void after() {
+      }
+    });
+  }
+
+}
+
+class TiledThreadTestSurface extends SurfaceMap<TiledThreadTestCell> {
+
+  public TiledThreadTestSurface(int totalSize, int tileSize) {
+    super(totalSize, 1);
+    setupTiledThreads(tileSize, 1);
+    setupArrayMap();
+  }
+
+  @Override
+  public void reset() {
+    buildMap();
+  }
+
+  @Override
+  public TiledThreadTestCell generateCell(int x, int y) {
+    return new TiledThreadTestCell(x, y);
+  }
+
+}
+
+class TiledThreadTestCell extends Cell {
+
+  private int updates;
+
+  public TiledThreadTestCell(int x, int y) {
+    super(x, y);
+  }
+
+  public void update() {
+    updates++;
+  }
+
+  public int getUpdates() {
+    return updates;
+  }
+
+}
@@ -0,0 +1,203 @@
+
+import engine.surface.Cell;
+import engine.surface.SurfaceMap;
+import engine.util.task.Boundaries;
+import engine.util.Vec2;
+import engine.util.task.Traversal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import worlds.planet.Util;
+import static org.junit.Assert.*;
+
+/**
+ * Tests the tiled layout of a SurfaceMap and the traversals that match the
+ * layouts.
+ *
+ * @author Richard DeSilvey
+ */
+public class TiledLayoutTest {
+
+  private static final int TILE_SIZE = 4;
+
+  private TiledTestSurface surface;
+
+  @Before
+  public void setUp() {
+    // The surface is 16 cells wide, four tiles on each side
+    surface = new TiledTestSurface(16 + 1, TILE_SIZE);
+    surface.reset();
+  }
+
+  @After
+  public void tearDown() {
+    surface.killAllThreads();
+  }
+
+  @Test
+  public void indexRoundTripTest() {
+    int width = surface.getTerrainSize();
+    Set<Integer> indexes = new HashSet<>();
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        int index = surface.calcIndex(x, y);
+        assertTrue("Index out of range " + index, index < surface.getIndexCapacity());
+        assertTrue("Index is shared " + index, indexes.add(index));
+        assertEquals(x, surface.calcX(index));
+        assertEquals(y, surface.calcY(index));
+      }
+    }
+  }
+
+  @Test
+  public void cellsInsideOfTileAreContiguousTest() {
+    int first = surface.calcIndex(TILE_SIZE, 0);
+    assertEquals(first + 1, surface.calcIndex(TILE_SIZE + 1, 0));
+    assertEquals(first + TILE_SIZE, surface.calcIndex(TILE_SIZE, 1));
+  }
+
+  @Test
+  public void cellsAreStoredAtTheirIndexTest() {
+    TiledTestCell cell = surface.getCellAt(9, 5);
+    assertEquals(9, cell.getX());
+    assertEquals(5, cell.getY());
+  }
+
+  /**
+   * The neighbor tables should wrap around the surface the same way the
+   * utility method does, including across tile boundaries.
+   */
+  @Test
+  public void neighborIndexesTest() {
+    int width = surface.getTerrainSize();
+    int[] indexes = new int[8];
+    for (int y = 0; y < width; y++) {
+      for (int x = 0; x < width; x++) {
+        Vec2[] expected = Util.getCellIndexesFrom(new Vec2(x, y), width);
+        surface.getNeighborIndexes(x, y, indexes);
+        for (int d = 0; d < expected.length; d++) {
+          int expectedIndex = surface.calcIndex((int) expected[d].getX(), (int) expected[d].getY());
+          assertEquals(expectedIndex, indexes[d]);
+        }
+      }
+    }
+    List<Integer> visited = new ArrayList<>();
+    surface.forEachNeighbor(surface.calcIndex(0, 0), visited::add);
+    assertEquals(8, visited.size());
+    assertEquals(surface.calcIndex(width - 1, width - 1), (int) visited.get(0));
+  }
+
+  @Test
+  public void rowMajorTraversalTest() throws Exception {
+    List<Integer> visited = new ArrayList<>();
+    Traversal.ROW_MAJOR.traverse(new Boundaries(0, 3, 0, 2), (x, y) -> {
+      visited.add(x + (y * 3));
+    });
+    for (int i = 0; i < visited.size(); i++) {
+      assertEquals(i, (int) visited.get(i));
+    }
+    assertEquals(6, visited.size());
+  }
+
+  /**
+   * The tiled traversal over a region that doesn't line up with the tiles
+   * should visit each cell once in the order they are laid out in memory.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void tiledTraversalTest() throws Exception {
+    Boundaries bounds = new Boundaries(2, 11, 1, 10);
+    List<Integer> visited = new ArrayList<>();
+    surface.getTraversal().traverse(bounds, (x, y) -> {
+      visited.add(surface.calcIndex(x, y));
+    });
+
+    assertEquals(9 * 9, visited.size());
+    assertEquals(visited.size(), new HashSet<>(visited).size());
+    for (int i = 1; i < visited.size(); i++) {
+      assertTrue("Cells visited out of memory order", visited.get(i) > visited.get(i - 1));
+    }
+  }
+
+  /**
+   * On a square region each cell the Hilbert traversal visits is next to the
+   * one before it, on any region every cell is visited once.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void hilbertTraversalTest() throws Exception {
+    List<int[]> square = new ArrayList<>();
+    Traversal.HILBERT.traverse(new Boundaries(4, 12, 4, 12), (x, y) -> {
+      square.add(new int[]{x, y});
+    });
+    assertEquals(8 * 8, square.size());
+    for (int i = 1; i < square.size(); i++) {
+      int[] last = square.get(i - 1), next = square.get(i);
+      assertEquals(1, Math.abs(next[0] - last[0]) + Math.abs(next[1] - last[1]));
+    }
+
+    Set<Integer> visited = new HashSet<>();
+    Traversal.HILBERT.traverse(new Boundaries(2, 11, 1, 16), (x, y) -> {
+      assertTrue(x >= 2 && x < 11 && y >= 1 && y < 16);
+      assertTrue(visited.add(surface.calcIndex(x, y)));
+    });
+    assertEquals(9 * 15, visited.size());
+  }
+
+  /**
+   * Each run stays inside of a tile and covers consecutive indexes, together
+   * the runs cover every cell of the bounds once.
+   *
+   * @throws Exception
+   */
+  @Test
+  public void runsTest() throws Exception {
+    Boundaries bounds = new Boundaries(2, 11, 1, 10);
+    Set<Integer> visited = new HashSet<>();
+    surface.forEachRun(bounds, (x, y, index, length) -> {
+      assertTrue(length > 0 && length <= TILE_SIZE);
+      assertEquals(x / TILE_SIZE, (x + length - 1) / TILE_SIZE);
+      for (int i = 0; i < length; i++) {
+        assertEquals(surface.calcIndex(x + i, y), index + i);
+        assertTrue(visited.add(index + i));
+      }
+    });
+    assertEquals(9 * 9, visited.size());
+  }
+
+}
+
+class TiledTestSurface extends SurfaceMap<TiledTestCell> {
+
+  public TiledTestSurface(int totalSize, int tileSize) {
+    super(totalSize, 1);
+    setTiledLayout(tileSize);
+    setupThreads(1, 1);
+    setupArrayMap();
+  }
+
+  @Override
+  public void reset() {
+    buildMap();
+  }
+
+  @Override
+  public TiledTestCell generateCell(int x, int y) {
+    return new TiledTestCell(x, y);
+  }
+
+}
+
+class TiledTestCell extends Cell {
+
+  public TiledTestCell(int x, int y) {
+    super(x, y);
+  }
+
+}
@@ -0,0 +1,103 @@
+import engine.surface.HaloField;
+import engine.util.concurrent.MThread;
+import engine.util.task.Boundaries;
+import engine.util.task.Task;
+import engine.util.task.Traversal;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import worlds.MinMaxHeightFactory;
+import worlds.planet.PlanetSurface;
+import worlds.planet.TestWorld;
+import worlds.planet.geosphere.GeoCell;
+import worlds.planet.geosphere.tasks.MantleConduction;
+import worlds.planet.geosphere.tasks.MantleRadiation;
+
+/**
+ * Compares the time each of the planet's tasks takes to sweep the surface
+ * when the cells are visited in row-major order, in tiles and along a Hilbert
+ * curve. The surface uses the row-major layout and a single thread so one
+ * sweep covers every cell. The tasks are performed one cell at a time, the
+ * array kernels aren't used. The default surface of 1024 by 1024 cells is
+ * far larger than the caches, a smaller surface mostly measures the cost of
+ * walking each order. The orders take turns over several rounds and the best
+ * sweep of each is kept so the warm up of one order doesn't favor another.
+ * This isn't part of the unit tests, run it's main method directly with a
+ * large enough heap.
+ * <br>
+ * <code>java -Xmx4g TraversalBenchmark [size] [tile size] [sweeps]</code>
+ *
+ * @author Richard DeSilvey
+ */
+public class TraversalBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int size = args.length > 0 ? Integer.parseInt(args[0]) : 1024;
+    int tileSize = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+    int sweeps = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+    TestWorld world = new TestWorld(size, 1);
+    try {
+      PlanetSurface surface = world.getSurface();
+      // The parent threads are set on the first frame
+      while (surface.getCellAt(0, 0).getParentThread() == null) {
+        Thread.sleep(10);
+      }
+      world.pause();
+      Thread.sleep(500);
+      int width = surface.getTerrainSize();
+      Boundaries bounds = new Boundaries(0, width, 0, width);
+      MThread thread = surface.getCellAt(0, 0).getParentThread();
+
+      Map<String, Traversal> traversals = new LinkedHashMap<>();
+      traversals.put("row-major", Traversal.ROW_MAJOR);
+      traversals.put("tiled " + tileSize, Traversal.tiled(tileSize));
+      traversals.put("hilbert", Traversal.HILBERT);
+
+      Map<String, Task> tasks = new LinkedHashMap<>();
+      tasks.put("MantleRadiation", new MantleRadiation(surface));
+      HaloField halo = surface.haloField(GeoCell.MANTLE_TEMPERATURE, 1);
+      tasks.put("MantleConduction", new MantleConduction(surface, halo));
+      tasks.put("MinMaxHeight", new MinMaxHeightFactory(surface).buildTask());
+
+      for (Map.Entry<String, Task> entry : tasks.entrySet()) {
+        Task task = entry.getValue();
+        task.setThread(thread);
+        task.construct();
+        task.before();
+        System.out.println(entry.getKey());
+        Map<String, Double> best = new LinkedHashMap<>();
+        for (int round = 0; round < ROUNDS; round++) {
+          for (Map.Entry<String, Traversal> order : traversals.entrySet()) {
+            double nanos = run(task, order.getValue(), bounds, sweeps);
+            best.merge(order.getKey(), nanos, Math::min);
+          }
+        }
+        best.forEach((order, nanos) -> {
+          System.out.printf("  %-10s %.2f ns/cell%n", order, nanos / ((double) width * width));
+        });
+      }
+    } finally {
+      world.shutdown();
+    }
+  }
+
+  /**
+   * The number of turns each order gets.
+   */
+  private static final int ROUNDS = 3;
+
+  /**
+   * The fastest of the given number of sweeps.
+   */
+  private static double run(Task task, Traversal traversal, Boundaries bounds, int sweeps)
+          throws Exception {
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < sweeps; i++) {
+      long start = System.nanoTime();
+      traversal.traverse(bounds, task::perform);
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+
+}